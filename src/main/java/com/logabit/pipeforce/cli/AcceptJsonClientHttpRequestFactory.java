@@ -0,0 +1,98 @@
+package com.logabit.pipeforce.cli;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+
+/**
+ * Sets the accept header of each request to application/json.
+ * <p>
+ * This is done here instead of using a {@link org.springframework.http.client.ClientHttpRequestInterceptor}
+ * since any interceptor causes the whole request body to be buffered in memory. This way, the request bodies of
+ * a streaming request factory are still written as stream. For example the body of a big property import.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class AcceptJsonClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private final ClientHttpRequestFactory delegate;
+
+    public AcceptJsonClientHttpRequestFactory(ClientHttpRequestFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return new AcceptJsonClientHttpRequest(delegate.createRequest(uri, httpMethod));
+    }
+
+    /**
+     * Delegates to the original request and sets the accept header right before execution, so it cannot be
+     * overwritten by the request callbacks of the rest template.
+     */
+    private static class AcceptJsonClientHttpRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+
+        private final ClientHttpRequest delegate;
+
+        AcceptJsonClientHttpRequest(ClientHttpRequest delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+
+            delegate.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+            return delegate.execute();
+        }
+
+        @Override
+        public void setBody(Body body) {
+
+            if (delegate instanceof StreamingHttpOutputMessage) {
+                ((StreamingHttpOutputMessage) delegate).setBody(body);
+                return;
+            }
+
+            try {
+                body.writeTo(delegate.getBody());
+            } catch (IOException e) {
+                throw new CliException("Could not write request body: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return delegate.getMethod();
+        }
+
+        @Override
+        public String getMethodValue() {
+            return delegate.getMethodValue();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+    }
+}
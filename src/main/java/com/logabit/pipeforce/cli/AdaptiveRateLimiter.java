@@ -0,0 +1,188 @@
+package com.logabit.pipeforce.cli;
+
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of requests sent to the server and adapts it to the observed response latency (AIMD).
+ * <p>
+ * As long as responses are faster than the target latency, the rate is raised: By factor {@link #SLOW_START_FACTOR}
+ * per response until the first slow response, afterwards by {@link #ADDITIVE_INCREASE} requests per second each
+ * second. A response slower than the target lowers the rate by factor {@link #SLOW_DECREASE_FACTOR}, at most once per
+ * latency, so a burst of slow responses to requests sent at the same time counts only once. An overloaded server
+ * (for example HTTP 429 or 503) halves the rate and pauses sending for {@link #OVERLOAD_PAUSE_MILLIS}.
+ * <p>
+ * This class is thread safe, so it can be shared by multiple threads sending requests.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class AdaptiveRateLimiter {
+
+    public static final long DEFAULT_TARGET_LATENCY_MILLIS = 1000;
+
+    /**
+     * Requests per second to start with.
+     */
+    public static final double INITIAL_RATE = 2;
+
+    public static final double MIN_RATE = 0.1;
+
+    public static final double MAX_RATE = 500;
+
+    public static final double SLOW_START_FACTOR = 1.2;
+
+    public static final double ADDITIVE_INCREASE = 1;
+
+    public static final double SLOW_DECREASE_FACTOR = 0.8;
+
+    public static final double OVERLOAD_DECREASE_FACTOR = 0.5;
+
+    public static final long OVERLOAD_PAUSE_MILLIS = 1000;
+
+    /**
+     * The weight of the last response for the average latency.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private final long targetLatencyNanos;
+
+    private double rate = INITIAL_RATE;
+
+    private boolean slowStart = true;
+
+    private double latencyNanos;
+
+    /**
+     * The earliest time the next request may be sent.
+     */
+    private long nextSendNanos = System.nanoTime();
+
+    /**
+     * Decreases before this time are skipped, since they are caused by requests sent before the last decrease.
+     */
+    private long noDecreaseBeforeNanos = System.nanoTime();
+
+    public AdaptiveRateLimiter() {
+        this(DEFAULT_TARGET_LATENCY_MILLIS);
+    }
+
+    /**
+     * @param targetLatencyMillis The response latency to aim at. Must be greater than 0.
+     */
+    public AdaptiveRateLimiter(long targetLatencyMillis) {
+
+        if (targetLatencyMillis <= 0) {
+            throw new CliException("Target latency must be greater than 0: " + targetLatencyMillis);
+        }
+
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    }
+
+    /**
+     * Waits until the next request may be sent according to the current rate.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long sendNanos = Math.max(now, nextSendNanos);
+            nextSendNanos = sendNanos + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            waitNanos = sendNanos - now;
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Records a successful response and adapts the rate.
+     *
+     * @param latencyNanos The duration from sending the request until the response was received.
+     */
+    public synchronized void onResponse(long latencyNanos) {
+
+        this.latencyNanos = (this.latencyNanos == 0) ? latencyNanos :
+                SMOOTHING * latencyNanos + (1 - SMOOTHING) * this.latencyNanos;
+
+        if (this.latencyNanos > targetLatencyNanos) {
+            decrease(SLOW_DECREASE_FACTOR);
+            return;
+        }
+
+        if (slowStart) {
+            rate = Math.min(MAX_RATE, rate * SLOW_START_FACTOR);
+        } else {
+            // +ADDITIVE_INCREASE per second: At the current rate, this method is called rate times a second
+            rate = Math.min(MAX_RATE, rate + ADDITIVE_INCREASE / rate);
+        }
+    }
+
+    /**
+     * Records an overloaded server, for example a response with status 429 or 503 or a refused connection. Halves
+     * the rate and pauses sending.
+     */
+    public synchronized void onOverload() {
+
+        decrease(OVERLOAD_DECREASE_FACTOR);
+        nextSendNanos = Math.max(nextSendNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                OVERLOAD_PAUSE_MILLIS));
+    }
+
+    /**
+     * Checks whether the given exception was caused by an overloaded server which rejected the request without
+     * processing it, so it can be sent again after a pause: HTTP 429, 503 or a refused connection. Other errors are
+     * not retryable, since the server might have processed the request, at least partially. For example after a
+     * read timeout or a 502 or 504 of a proxy, the server could still be processing it.
+     *
+     * @param e
+     * @return
+     */
+    public static boolean isOverload(Throwable e) {
+
+        if (e instanceof ResourceAccessException) {
+            return e.getCause() instanceof ConnectException; // Not sent at all
+        }
+
+        if (!(e instanceof HttpStatusCodeException)) {
+            return false;
+        }
+
+        int status = ((HttpStatusCodeException) e).getRawStatusCode();
+        return status == 429 || status == 503;
+    }
+
+    /**
+     * @return The current rate in requests per second.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return The average response latency in milliseconds.
+     */
+    public synchronized long getLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((long) latencyNanos);
+    }
+
+    private void decrease(double factor) {
+
+        slowStart = false;
+
+        long now = System.nanoTime();
+        if (now < noDecreaseBeforeNanos) {
+            return;
+        }
+
+        rate = Math.max(MIN_RATE, rate * factor);
+        noDecreaseBeforeNanos = now + (long) Math.max(latencyNanos, targetLatencyNanos);
+    }
+}
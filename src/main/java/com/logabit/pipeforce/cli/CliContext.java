@@ -8,6 +8,7 @@ import com.logabit.pipeforce.cli.service.ConfigCliService;
 import com.logabit.pipeforce.cli.service.InitCliService;
 import com.logabit.pipeforce.cli.service.InstallCliService;
 import com.logabit.pipeforce.cli.service.KubectlCliService;
+import com.logabit.pipeforce.cli.service.MimeTypeCliService;
 import com.logabit.pipeforce.cli.service.OutputCliService;
 import com.logabit.pipeforce.cli.service.PublishCliService;
 import com.logabit.pipeforce.cli.service.UpdateCliService;
@@ -16,8 +17,6 @@ import com.logabit.pipeforce.common.command.stub.ServerInfoParams;
 import com.logabit.pipeforce.common.converter.BooleanHttpMessageConverter;
 import com.logabit.pipeforce.common.converter.NumberHttpMessageConverter;
 import com.logabit.pipeforce.common.net.ClientPipeforceURIResolver;
-import com.logabit.pipeforce.common.content.service.MimeTypeService;
-import com.logabit.pipeforce.common.util.Create;
 import com.logabit.pipeforce.common.util.InputUtil;
 import com.logabit.pipeforce.common.util.PathUtil;
 import com.logabit.pipeforce.common.util.ReflectionUtil;
@@ -28,11 +27,6 @@ import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.ssl.SSLContexts;
-import org.apache.tika.Tika;
-import org.apache.tika.config.TikaConfig;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
@@ -44,7 +38,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
-import java.util.Collections;
 
 /**
  * This is a lightweight approach of an application context,
@@ -52,11 +45,16 @@ import java.util.Collections;
  */
 public class CliContext {
 
+    /**
+     * The max. number of pooled HTTP connections. Must be higher than the max. number of parallel requests.
+     */
+    public static final int MAX_HTTP_CONNECTIONS = 20;
+
     private ConfigCliService configService;
 
     private OutputCliService outputService;
 
-    private MimeTypeService mimeTypeService;
+    private MimeTypeCliService mimeTypeService;
 
     private RestTemplate restTemplate;
 
@@ -201,10 +199,10 @@ public class CliContext {
         return outputService;
     }
 
-    public MimeTypeService getMimeTypeService() {
+    public MimeTypeCliService getMimeTypeService() {
 
         if (mimeTypeService == null) {
-            mimeTypeService = new MimeTypeService(new Tika(), TikaConfig.getDefaultConfig());
+            mimeTypeService = new MimeTypeCliService();
             initComponent(mimeTypeService);
         }
 
@@ -404,15 +402,11 @@ public class CliContext {
 
         HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory();
         requestFactory.setHttpClient(getHttpClient());
+        requestFactory.setBufferRequestBody(false); // Write request bodies as stream, not into memory first
 
-        RestTemplate template = new RestTemplate(requestFactory);
-        template.setInterceptors(Create.newList((ClientHttpRequestInterceptor) (request, body, execution) -> {
-
-            HttpHeaders headers = request.getHeaders();
-            headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
-            return execution.execute(request, body);
-        }));
+        RestTemplate template = new RestTemplate(new AcceptJsonClientHttpRequestFactory(requestFactory));
 
+        template.getMessageConverters().add(0, new PropertyPageHttpMessageConverter()); // Before JSON
         template.getMessageConverters().add(new BooleanHttpMessageConverter());
         template.getMessageConverters().add(new NumberHttpMessageConverter());
 
@@ -436,7 +430,11 @@ public class CliContext {
         }
 
         SSLConnectionSocketFactory csf = new SSLConnectionSocketFactory(sslContext, hostnameVerifier);
-        httpClient = HttpClients.custom().setSSLSocketFactory(csf).build();
+        httpClient = HttpClients.custom()
+                .setSSLSocketFactory(csf)
+                .setMaxConnPerRoute(MAX_HTTP_CONNECTIONS)
+                .setMaxConnTotal(MAX_HTTP_CONNECTIONS)
+                .build();
         return httpClient;
     }
 
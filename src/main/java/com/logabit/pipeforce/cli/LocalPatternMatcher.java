@@ -0,0 +1,186 @@
+package com.logabit.pipeforce.cli;
+
+import org.springframework.util.AntPathMatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Finds all local files matching a given absolute ant style pattern like /Users/foo/properties/global/app/&#42;&#42;.
+ * See {@link CliPathArg#getLocalPattern()}.
+ * <p>
+ * The file tree is walked starting at the deepest folder without any wildcard. Sub folders which can never match
+ * the pattern are skipped entirely. The size and last modified time of each file are taken from the attributes
+ * read while walking, so no additional file system call is required per file.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class LocalPatternMatcher {
+
+    private final AntPathMatcher matcher = new AntPathMatcher();
+
+    private final String pattern;
+
+    public LocalPatternMatcher(String pattern) {
+        this.pattern = toUnixPath(pattern);
+    }
+
+    /**
+     * Returns all regular files matching the pattern, sorted the same way as folders are listed: By name,
+     * where the files inside a folder come right after the folder name.
+     *
+     * @return The matching files. Never null.
+     * @throws IOException
+     */
+    public List<MatchedFile> match() throws IOException {
+
+        List<MatchedFile> matches = new ArrayList<>();
+
+        if (!matcher.isPattern(pattern)) {
+
+            // A single file path -> No need to walk
+            Path path = Paths.get(pattern);
+            if (Files.isRegularFile(path)) {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                matches.add(new MatchedFile(path.toFile(), attrs));
+            }
+
+            return matches;
+        }
+
+        Path root = Paths.get(getRootFolder());
+        if (!Files.isDirectory(root)) {
+            return matches;
+        }
+
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+
+                        if (dir.equals(root) || matcher.matchStart(pattern, toUnixPath(dir.toString()) + "/")) {
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        return FileVisitResult.SKIP_SUBTREE; // Nothing below this folder can match
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+
+                        if (attrs.isRegularFile() && matcher.match(pattern, toUnixPath(file.toString()))) {
+                            matches.add(new MatchedFile(file.toFile(), attrs));
+                        }
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE; // Skip unreadable files and folders
+                    }
+                });
+
+        Collections.sort(matches, (a, b) -> comparePaths(a.getFile().toPath(), b.getFile().toPath()));
+        return matches;
+    }
+
+    /**
+     * Returns the deepest folder of the pattern which doesn't contain any wildcard.
+     * For example /Users/foo/properties/global/app for pattern /Users/foo/properties/global/app/&#42;/pipeline/&#42;.
+     *
+     * @return
+     */
+    String getRootFolder() {
+
+        int wildcardIndex = pattern.length();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '{') {
+                wildcardIndex = i;
+                break;
+            }
+        }
+
+        int rootEnd = pattern.lastIndexOf('/', wildcardIndex);
+        if (rootEnd <= 0) {
+            return "/";
+        }
+
+        String root = pattern.substring(0, rootEnd);
+
+        // Windows drive root like C: -> C:/
+        if (root.endsWith(":")) {
+            return root + "/";
+        }
+
+        return root;
+    }
+
+    private static int comparePaths(Path a, Path b) {
+
+        int count = Math.min(a.getNameCount(), b.getNameCount());
+        for (int i = 0; i < count; i++) {
+            int result = a.getName(i).toString().compareTo(b.getName(i).toString());
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return Integer.compare(a.getNameCount(), b.getNameCount());
+    }
+
+    private static String toUnixPath(String path) {
+        return path.replace('\\', '/');
+    }
+
+    /**
+     * A file matching the pattern together with the attributes read while walking the file tree.
+     */
+    public static class MatchedFile {
+
+        private final File file;
+
+        private final long size;
+
+        private final long lastModified;
+
+        public MatchedFile(File file, BasicFileAttributes attrs) {
+            this(file, attrs.size(), attrs.lastModifiedTime().toMillis());
+        }
+
+        public MatchedFile(File file, long size, long lastModified) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return Last modified in milliseconds since 1970.
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
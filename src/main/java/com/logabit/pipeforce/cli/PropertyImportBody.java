@@ -0,0 +1,168 @@
+package com.logabit.pipeforce.cli;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import static com.logabit.pipeforce.common.property.IProperty.FIELD_PATH;
+import static com.logabit.pipeforce.common.property.IProperty.FIELD_TYPE;
+import static com.logabit.pipeforce.common.property.IProperty.FIELD_UUID;
+import static com.logabit.pipeforce.common.property.IProperty.FIELD_VALUE;
+
+/**
+ * The JSON body of a property.import request, written as stream into a temp file.
+ * <p>
+ * The file content of each property is streamed from a {@link FileChannel} directly into the JSON generator,
+ * base64 encoded on the fly in case it is binary. This way, the memory required to build and send the body
+ * doesn't depend on the size of the files to import. Use {@link #toResource()} to send the body as stream.
+ * Always close this body after the request has been sent in order to delete the temp file.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PropertyImportBody implements Closeable {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final File file;
+
+    private final JsonGenerator generator;
+
+    private int size;
+
+    private boolean finished;
+
+    public PropertyImportBody() {
+
+        try {
+            this.file = File.createTempFile("pipeforce-import", ".json");
+            this.file.deleteOnExit();
+            this.generator = JSON_FACTORY.createGenerator(file, JsonEncoding.UTF8);
+            this.generator.writeStartArray();
+        } catch (IOException e) {
+            throw new CliException("Could not create import body: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds a property with the given value to this body.
+     *
+     * @param path  The path of the property.
+     * @param type  The type of the property.
+     * @param uuid  The optional uuid of the property. Can be null.
+     * @param value The value of the property.
+     */
+    public void add(String path, String type, String uuid, String value) {
+
+        try {
+            writeStart(path, type, uuid);
+            generator.writeString(value);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new CliException("Could not write property " + path + " to import body: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds a property to this body and streams the content of the given file as its value.
+     *
+     * @param path   The path of the property.
+     * @param type   The type of the property.
+     * @param uuid   The optional uuid of the property. Can be null.
+     * @param file   The file to read the value from.
+     * @param base64 If true, the file content is written base64 encoded. Otherwise, it is written as UTF-8 text.
+     */
+    public void add(String path, String type, String uuid, File file, boolean base64) {
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             InputStream is = Channels.newInputStream(channel)) {
+
+            writeStart(path, type, uuid);
+
+            if (base64) {
+                generator.writeBinary(is, -1);
+            } else {
+                Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
+                generator.writeString(reader, -1);
+            }
+
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new CliException("Could not write file " + file + " to import body: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeStart(String path, String type, String uuid) throws IOException {
+
+        if (finished) {
+            throw new CliException("Import body was already finished. Cannot add property: " + path);
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField(FIELD_PATH, path);
+        generator.writeStringField(FIELD_TYPE, type);
+
+        if (uuid != null) {
+            generator.writeStringField(FIELD_UUID, uuid);
+        }
+
+        generator.writeFieldName(FIELD_VALUE);
+        size++;
+    }
+
+    /**
+     * @return The number of properties added to this body so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finishes this body and returns it as resource which can be streamed to the server.
+     * After this call, no more properties can be added.
+     *
+     * @return The resource pointing to the finished body.
+     */
+    public Resource toResource() {
+
+        if (!finished) {
+            try {
+                generator.writeEndArray();
+                generator.close();
+                finished = true;
+            } catch (IOException e) {
+                throw new CliException("Could not finish import body: " + e.getMessage(), e);
+            }
+        }
+
+        return new FileSystemResource(file);
+    }
+
+    /**
+     * Closes this body and deletes its temp file.
+     */
+    @Override
+    public void close() {
+
+        try {
+            generator.close();
+        } catch (IOException e) {
+            // Ignore since file gets deleted anyway
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,420 @@
+package com.logabit.pipeforce.cli;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.logabit.pipeforce.common.content.model.ContentType;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.logabit.pipeforce.common.property.IProperty.FIELD_PATH;
+import static com.logabit.pipeforce.common.property.IProperty.FIELD_TYPE;
+import static com.logabit.pipeforce.common.property.IProperty.FIELD_UUID;
+import static com.logabit.pipeforce.common.property.IProperty.FIELD_VALUE;
+
+/**
+ * A page of a property list response, spooled into a temp file instead of being loaded into memory.
+ * <p>
+ * On {@link #read(InputStream)}, the response is copied into a temp file and parsed once using a {@link JsonParser}
+ * to collect the metadata and the position of the value of each property. Values are skipped on this pass. Later,
+ * {@link #writeValue(Property, OutputStream)} reads a value from its position and writes it into a target stream in
+ * chunks: Text is unescaped on the fly, binary content base64 decoded on the fly. So no value is ever held in memory
+ * as a whole, independent of the size of the page or a single property. Always close the page after it has been processed in order to delete the
+ * temp file.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PropertyPage implements Closeable {
+
+    /**
+     * The property.list parameter to return only the given fields of each property. It is not part of
+     * {@link com.logabit.pipeforce.common.command.stub.PropertyListParams} and servers not supporting it simply
+     * ignore it and also send the values. Since values are skipped on read, the result is still correct, only more
+     * data is transferred. Use {@link #hasValues()} to detect this.
+     */
+    public static final String PARAM_FIELDS = "fields";
+
+    /**
+     * Printed once in case a page requested without values contains values anyway.
+     */
+    public static final String FIELDS_IGNORED_WARNING = "Warning: The server ignores the fields parameter and " +
+            "also sends the values. The result is correct, but more data is transferred.";
+
+    /**
+     * The fields needed to identify a property and its local file. Requests the list without any value.
+     */
+    public static final String FIELDS_KEYS = FIELD_PATH + "," + FIELD_TYPE;
+
+    /**
+     * All fields read by {@link #read(InputStream)}. Requests the list without any value.
+     */
+    public static final String FIELDS_METADATA = FIELDS_KEYS + "," + FIELD_UUID + ",created,updated";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * The number of chars of a text value written at once.
+     */
+    private static final int TEXT_CHUNK_SIZE = 8192;
+
+    /**
+     * Base64 as sent by the server. Line feeds are skipped by the parser, padding is optional.
+     */
+    private static final Base64Variant BASE64 =
+            Base64Variants.MIME_NO_LINEFEEDS.withReadPadding(Base64Variant.PaddingReadBehaviour.PADDING_ALLOWED);
+
+    private final File file;
+
+    private final long bytes;
+
+    private final List<Property> properties;
+
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private PropertyPage(File file, long bytes, List<Property> properties) {
+        this.file = file;
+        this.bytes = bytes;
+        this.properties = properties;
+    }
+
+    /**
+     * Spools the given property list response into a temp file and reads the metadata of its properties.
+     * The stream is not closed.
+     *
+     * @param in The JSON array of properties.
+     * @return
+     */
+    public static PropertyPage read(InputStream in) {
+
+        File file = null;
+        try {
+            file = File.createTempFile("pipeforce-page", ".json");
+            file.deleteOnExit();
+            long bytes = Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return new PropertyPage(file, bytes, readProperties(file));
+        } catch (IOException | RuntimeException e) {
+
+            if (file != null) {
+                file.delete();
+            }
+
+            throw new CliException("Could not read property list: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The metadata of all properties of this page in the order sent by the server.
+     */
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return The number of properties in this page.
+     */
+    public int size() {
+        return properties.size();
+    }
+
+    /**
+     * @return True in case at least one property of this page has a value. In case the page was requested using
+     * {@link #PARAM_FIELDS} without value, this means the server ignored the parameter.
+     */
+    public boolean hasValues() {
+
+        for (Property property : properties) {
+            if (property.hasValue) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The size of the response in bytes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Writes the value of the given property into the given stream. Text values are unescaped and written UTF-8
+     * encoded, base64 values are decoded on the fly. Nothing is written in case the property has no value. The
+     * stream is not closed.
+     * <p>
+     * Each call reads the value using its own parser, starting at the position of the value in the temp file. So
+     * values of the same page can be written from multiple threads at the same time.
+     *
+     * @param property A property of this page.
+     * @param out
+     */
+    public void writeValue(Property property, OutputStream out) {
+
+        if (!property.hasValue) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            channel.position(property.valueOffset);
+            InputStream in = Channels.newInputStream(channel);
+
+            if (property.isBase64()) {
+
+                try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+
+                    if (parser.nextToken() != JsonToken.VALUE_STRING) {
+                        throw new IOException("No value found at offset " + property.valueOffset);
+                    }
+
+                    parser.readBinaryValue(BASE64, out);
+                }
+            } else {
+
+                // Not parser.getText(): It would collect the whole text in memory first
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                writeText(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), writer,
+                        property.valueOffset);
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new CliException("Could not write value of property " + property.path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Keeps the temp file of this page until {@link #close()} has been called once more. Use this to process the
+     * values of this page after the owner has closed it, for example in another thread.
+     *
+     * @return This page.
+     */
+    public PropertyPage retain() {
+        references.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Deletes the temp file of this page, as soon as it has been closed as often as it was retained plus one.
+     */
+    @Override
+    public void close() {
+
+        if (references.decrementAndGet() == 0) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Reads a JSON string starting at its opening quote and writes it unescaped into the given writer in chunks.
+     *
+     * @param reader
+     * @param writer
+     * @param offset The position of the string in the file. Used for error messages only.
+     * @throws IOException
+     */
+    private static void writeText(Reader reader, Writer writer, long offset) throws IOException {
+
+        if (reader.read() != '"') {
+            throw new IOException("No value found at offset " + offset);
+        }
+
+        char[] chunk = new char[TEXT_CHUNK_SIZE];
+        int length = 0;
+
+        while (true) {
+
+            int c = reader.read();
+            if (c < 0) {
+                throw new IOException("Unexpected end of value at offset " + offset);
+            }
+
+            if (c == '"') {
+                break;
+            }
+
+            if (c == '\\') {
+                c = readEscaped(reader, offset);
+            }
+
+            chunk[length++] = (char) c;
+            if (length == chunk.length) {
+                writer.write(chunk, 0, length);
+                length = 0;
+            }
+        }
+
+        writer.write(chunk, 0, length);
+    }
+
+    /**
+     * Reads the rest of an escape sequence after the backslash.
+     *
+     * @param reader
+     * @param offset The position of the string in the file. Used for error messages only.
+     * @return The escaped char.
+     * @throws IOException
+     */
+    private static int readEscaped(Reader reader, long offset) throws IOException {
+
+        int c = reader.read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                char[] hex = new char[4];
+                for (int i = 0; i < hex.length; i++) {
+                    int h = reader.read();
+                    if (Character.digit(h, 16) < 0) {
+                        throw new IOException("Invalid unicode escape in value at offset " + offset);
+                    }
+                    hex[i] = (char) h;
+                }
+                return Integer.parseInt(new String(hex), 16);
+            default:
+                throw new IOException("Invalid escape in value at offset " + offset);
+        }
+    }
+
+    /**
+     * Reads the metadata of all properties. Values are skipped by the parser without being buffered.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private static List<Property> readProperties(File file) throws IOException {
+
+        try (JsonParser parser = JSON_FACTORY.createParser(file)) {
+
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.VALUE_NULL) {
+                return Collections.emptyList();
+            }
+
+            if (token != JsonToken.START_ARRAY) {
+                throw new IOException("Expected JSON array but got: " + token);
+            }
+
+            List<Property> properties = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+
+                Property property = new Property();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                    String fieldName = parser.getCurrentName();
+                    token = parser.nextToken();
+
+                    if (FIELD_PATH.equals(fieldName)) {
+                        property.path = parser.getValueAsString();
+                    } else if (FIELD_UUID.equals(fieldName)) {
+                        property.uuid = parser.getValueAsString();
+                    } else if (FIELD_TYPE.equals(fieldName)) {
+                        property.type = parser.getValueAsString();
+                    } else if ("created".equals(fieldName)) {
+                        property.created = parser.getValueAsLong();
+                    } else if ("updated".equals(fieldName)) {
+                        property.updated = parser.getValueAsLong();
+                    } else if (FIELD_VALUE.equals(fieldName)) {
+                        property.hasValue = (token == JsonToken.VALUE_STRING);
+                        property.valueOffset = parser.getTokenLocation().getByteOffset();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                properties.add(property);
+            }
+
+            return properties;
+        }
+    }
+
+    /**
+     * The metadata of a single property of a page.
+     */
+    public static class Property {
+
+        private String path;
+
+        private String uuid;
+
+        private String type;
+
+        private long created;
+
+        private long updated;
+
+        private boolean hasValue;
+
+        private long valueOffset;
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        /**
+         * @return The last update or 0 in case the property was never updated.
+         */
+        public long getUpdated() {
+            return updated;
+        }
+
+        /**
+         * @return True in case the property has a value which is not null.
+         */
+        public boolean hasValue() {
+            return hasValue;
+        }
+
+        public boolean isBase64() {
+            return type != null && "base64".equals(new ContentType(type).getEncodingParameter());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.logabit.pipeforce.cli;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+
+/**
+ * Reads a property list response as {@link PropertyPage}, so the response body is streamed into a temp file
+ * instead of being parsed into memory. Use {@link PropertyPage} as result type of a property.list command.
+ * <p>
+ * Must be registered before any JSON converter, since these would also accept the type.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PropertyPageHttpMessageConverter extends AbstractHttpMessageConverter<PropertyPage> {
+
+    public PropertyPageHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON, MediaType.ALL);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PropertyPage.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected PropertyPage readInternal(Class<? extends PropertyPage> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+
+        return PropertyPage.read(inputMessage.getBody());
+    }
+
+    @Override
+    protected void writeInternal(PropertyPage page, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException("A property page can only be read");
+    }
+}
@@ -0,0 +1,241 @@
+package com.logabit.pipeforce.cli;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Fetches property lists page by page and tunes the page size from the observed response size and latency.
+ * <p>
+ * The first page is fetched with {@link #DEFAULT_PAGE_SIZE}. After each page, the average bytes and duration per
+ * property are updated and the next page size is chosen so a page is close to {@link #TARGET_PAGE_BYTES} and
+ * {@link #TARGET_PAGE_MILLIS}, whichever is reached first. The page size is always kept between
+ * {@link #MIN_PAGE_SIZE} and {@link #MAX_PAGE_SIZE} and grows by factor {@link #MAX_GROWTH} per page at most,
+ * but can shrink immediately. A page size set by the user is never changed.
+ * <p>
+ * This class is thread safe. Pages can be fetched from multiple threads at the same time.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PropertyPager {
+
+    public static final String SWITCH_PAGE_SIZE = "pageSize";
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    public static final int MIN_PAGE_SIZE = 10;
+
+    public static final int MAX_PAGE_SIZE = 5000;
+
+    /**
+     * The payload of a single page to aim at. Large enough to make the request overhead negligible, small enough
+     * to keep the memory footprint of a page low.
+     */
+    public static final long TARGET_PAGE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The duration of a single page request to aim at.
+     */
+    public static final long TARGET_PAGE_MILLIS = 2000;
+
+    private static final int MAX_GROWTH = 2;
+
+    /**
+     * The weight of the last page for the averages per property.
+     */
+    private static final double SMOOTHING = 0.5;
+
+    private final boolean fixed;
+
+    private int pageSize;
+
+    private double bytesPerProperty;
+
+    private double nanosPerProperty;
+
+    /**
+     * Creates a pager which tunes the page size automatically.
+     */
+    public PropertyPager() {
+        this.fixed = false;
+        this.pageSize = DEFAULT_PAGE_SIZE;
+    }
+
+    /**
+     * Creates a pager which always uses the given page size.
+     *
+     * @param pageSize Must be between 1 and {@link #MAX_PAGE_SIZE}.
+     */
+    public PropertyPager(int pageSize) {
+
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new CliException("Switch " + SWITCH_PAGE_SIZE + " must be between 1 and " + MAX_PAGE_SIZE + ": " +
+                    pageSize);
+        }
+
+        this.fixed = true;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return The page size to be used for the next page.
+     */
+    public synchronized int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isFixed() {
+        return fixed;
+    }
+
+    /**
+     * Fetches a single page using the given fetcher and records its size and duration.
+     *
+     * @param fetcher
+     * @param offset
+     * @param limit   The page size the page was requested with.
+     * @return The page or null in case the server returned nothing.
+     */
+    public PropertyPage fetch(PageFetcher fetcher, int offset, int limit) {
+
+        long start = System.nanoTime();
+        PropertyPage page = fetcher.fetch(offset, limit);
+
+        if (page != null) {
+            record(page.size(), page.getBytes(), System.nanoTime() - start);
+        }
+
+        return page;
+    }
+
+    /**
+     * Fetches all pages one after another and passes each of them to the given consumer. Stops at the first empty
+     * page, not at a page containing less properties than requested, since the server might return less than the
+     * limit, for example in case it caps the page size. Each page is closed after it has been consumed.
+     *
+     * @param fetcher
+     * @param consumer
+     */
+    public void fetchAll(PageFetcher fetcher, Consumer<PropertyPage> consumer) {
+
+        fetchWhile(fetcher, page -> {
+            consumer.accept(page);
+            return true;
+        });
+    }
+
+    /**
+     * Same as {@link #fetchAll(PageFetcher, Consumer)} but stops as soon as the consumer returns false.
+     *
+     * @param fetcher
+     * @param consumer Returns false in case no more pages are needed.
+     */
+    public void fetchWhile(PageFetcher fetcher, Predicate<PropertyPage> consumer) {
+
+        int offset = 0;
+        while (true) {
+
+            int limit = getPageSize();
+            try (PropertyPage page = fetch(fetcher, offset, limit)) {
+
+                if (page == null || page.size() == 0) {
+                    return;
+                }
+
+                if (!consumer.test(page)) {
+                    return;
+                }
+
+                offset = offset + page.size();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #fetchAll(PageFetcher, Consumer)} but for consumers which delete the properties of each page on
+     * the server. Since this shifts all remaining properties to the front, every page is fetched from offset 0.
+     * <p>
+     * In case a page contains a property of the page before, the consumer obviously didn't delete it. The server
+     * would return the same page again and again, so this is reported as error.
+     *
+     * @param fetcher
+     * @param consumer Must delete all properties of the given page on the server.
+     */
+    public void drain(PageFetcher fetcher, Consumer<PropertyPage> consumer) {
+
+        Set<String> lastPaths = Collections.emptySet();
+        while (true) {
+
+            int limit = getPageSize();
+            try (PropertyPage page = fetch(fetcher, 0, limit)) {
+
+                if (page == null || page.size() == 0) {
+                    return;
+                }
+
+                Set<String> paths = new HashSet<>();
+                for (PropertyPage.Property property : page.getProperties()) {
+
+                    if (lastPaths.contains(property.getPath())) {
+                        throw new CliException("Property was not deleted: " + property.getPath());
+                    }
+
+                    paths.add(property.getPath());
+                }
+
+                consumer.accept(page);
+                lastPaths = paths;
+            }
+        }
+    }
+
+    /**
+     * Records a received page and adjusts the page size for the next pages.
+     *
+     * @param properties The number of properties in the page.
+     * @param bytes      The size of the page in bytes.
+     * @param nanos      The duration of the request.
+     */
+    public synchronized void record(int properties, long bytes, long nanos) {
+
+        if (fixed || properties == 0) {
+            return;
+        }
+
+        double pageBytesPerProperty = bytes / (double) properties;
+        double pageNanosPerProperty = nanos / (double) properties;
+
+        if (bytesPerProperty == 0 && nanosPerProperty == 0) {
+            bytesPerProperty = pageBytesPerProperty;
+            nanosPerProperty = pageNanosPerProperty;
+        } else {
+            bytesPerProperty = SMOOTHING * pageBytesPerProperty + (1 - SMOOTHING) * bytesPerProperty;
+            nanosPerProperty = SMOOTHING * pageNanosPerProperty + (1 - SMOOTHING) * nanosPerProperty;
+        }
+
+        double sizeByBytes = TARGET_PAGE_BYTES / Math.max(bytesPerProperty, 1);
+        double sizeByTime = TimeUnit.MILLISECONDS.toNanos(TARGET_PAGE_MILLIS) / Math.max(nanosPerProperty, 1);
+        long nextSize = (long) Math.min(sizeByBytes, sizeByTime);
+
+        nextSize = Math.min(nextSize, (long) pageSize * MAX_GROWTH);
+        pageSize = (int) Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, nextSize));
+    }
+
+    /**
+     * Fetches a single page of properties from the server.
+     */
+    @FunctionalInterface
+    public interface PageFetcher {
+
+        /**
+         * @param offset
+         * @param limit
+         * @return The properties of the page or null in case nothing was found.
+         */
+        PropertyPage fetch(int offset, int limit);
+    }
+}
@@ -0,0 +1,87 @@
+package com.logabit.pipeforce.cli;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Base64;
+
+/**
+ * The value of a single property sent as request body, for example by property.schema.put, instead of as request
+ * parameter.
+ * <p>
+ * A text file is sent as it is. A binary file is base64 encoded into a temp file first, streamed through the
+ * encoder. So, similar to {@link PropertyImportBody}, the memory required to send the value doesn't depend on the
+ * size of the file. Always close this body after the request has been sent in order to delete the temp file.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PropertyValueBody implements Closeable {
+
+    private final File file;
+
+    private final File tmpFile;
+
+    /**
+     * @param file   The file to read the value from.
+     * @param base64 If true, the file content is sent base64 encoded. Otherwise, it is sent as it is.
+     */
+    public PropertyValueBody(File file, boolean base64) {
+
+        if (!base64) {
+            this.file = file;
+            this.tmpFile = null;
+            return;
+        }
+
+        File encodedFile = null;
+        try {
+            encodedFile = File.createTempFile("pipeforce-value", ".b64");
+            encodedFile.deleteOnExit();
+
+            try (OutputStream os = Base64.getEncoder().wrap(Files.newOutputStream(encodedFile.toPath()))) {
+                Files.copy(file.toPath(), os);
+            }
+
+            this.file = encodedFile;
+            this.tmpFile = encodedFile;
+        } catch (IOException e) {
+
+            if (encodedFile != null) {
+                encodedFile.delete();
+            }
+
+            throw new CliException("Could not encode file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The resource pointing to the value, which can be streamed to the server.
+     */
+    public Resource toResource() {
+        return new FileSystemResource(file);
+    }
+
+    /**
+     * @return The size of the value in bytes, as sent.
+     */
+    public long getBytes() {
+        return file.length();
+    }
+
+    /**
+     * Deletes the temp file of a base64 encoded value.
+     */
+    @Override
+    public void close() {
+
+        if (tmpFile != null) {
+            tmpFile.delete();
+        }
+    }
+}
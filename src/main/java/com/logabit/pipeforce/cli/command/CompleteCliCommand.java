@@ -0,0 +1,51 @@
+package com.logabit.pipeforce.cli.command;
+
+import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.service.RemoteIndex;
+
+/**
+ * Completes a remote property path using the local remote index. Never asks the server, so it is fast enough to be
+ * called by the shell on each tab. The index is created and refreshed by pi list --cached:true. Keys changed by get,
+ * publish and delete of this CLI are updated directly, changes by others only by the next refresh. So completions
+ * can be outdated.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class CompleteCliCommand extends BaseCliCommand {
+
+    @Override
+    public int call(CommandArgs args) throws Exception {
+
+        if (args.getLength() > 1) {
+            out.println("USAGE: " + getUsageHelp());
+            return -1;
+        }
+
+        String prefix = args.getLength() == 0 ? "" : args.getOptionKeyAt(0);
+        if (prefix.startsWith("/")) {
+            prefix = prefix.substring(1);
+        }
+
+        RemoteIndex index = new RemoteIndex(getContext().getHiddenPipeforceFolder(),
+                getContext().getCurrentInstance().getHost(), getContext().getCurrentInstance().getNamespace());
+
+        if (!index.exists()) {
+            return 0; // Nothing to complete
+        }
+
+        out.printLines(index.complete(prefix));
+        return 0;
+    }
+
+    public String getUsageHelp() {
+        return "pi complete [<PATH_PREFIX>]\n" +
+                "   Prints the next path segments of all remote properties starting with the given prefix.\n" +
+                "   Uses the local index of remote keys only. Create or refresh it using pi list --cached:true.\n" +
+                "   Changes by others are only in the index after its next refresh,\n" +
+                "   so it can miss new keys or show deleted ones.\n" +
+                "   Example for bash:\n" +
+                "     _pi() { COMPREPLY=($(pi complete \"${COMP_WORDS[COMP_CWORD]}\")); }\n" +
+                "     complete -o nospace -o default -F _pi pi";
+    }
+}
@@ -1,16 +1,29 @@
 package com.logabit.pipeforce.cli.command;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.logabit.pipeforce.cli.CliException;
 import com.logabit.pipeforce.cli.CliPathArg;
 import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.PropertyPage;
+import com.logabit.pipeforce.cli.PropertyPager;
 import com.logabit.pipeforce.cli.service.PublishCliService;
+import com.logabit.pipeforce.cli.service.RemoteIndex;
 import com.logabit.pipeforce.common.command.stub.PropertyListParams;
 import com.logabit.pipeforce.common.command.stub.PropertySchemaDeleteParams;
 import com.logabit.pipeforce.common.util.ListUtil;
 import com.logabit.pipeforce.common.util.PathUtil;
+import com.logabit.pipeforce.common.util.StringUtil;
+import org.springframework.util.AntPathMatcher;
 
-import static com.logabit.pipeforce.common.property.IProperty.FIELD_PATH;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.logabit.pipeforce.common.util.VersionUtil.givenNewerOrEqualThanRequired;
 
 /**
  * Deletes the given remote property.
@@ -20,6 +33,30 @@ import static com.logabit.pipeforce.common.property.IProperty.FIELD_PATH;
  */
 public class DeleteCliCommand extends BaseCliCommand {
 
+    public static final String SWITCH_PARALLEL = "parallel";
+
+    public static final String SWITCH_SERVER_SIDE = "serverSide";
+
+    /**
+     * The max. number of delete requests in flight at the same time. Protects the server from being flooded.
+     */
+    public static final int MAX_PARALLEL = 16;
+
+    /**
+     * Paging using offset and deleting by pattern on server side are supported since this server version.
+     */
+    private static final int[] OFFSET_REQUIRED_VERSION = new int[]{10, 0, 2, 0};
+
+    private PropertyPager pager = new PropertyPager();
+
+    private int parallel = 1;
+
+    private boolean serverSide = false;
+
+    private int deletedCounter = 0;
+
+    private boolean fieldsIgnored = false;
+
     @Override
     public int call(CommandArgs args) throws Exception {
 
@@ -28,6 +65,21 @@ public class DeleteCliCommand extends BaseCliCommand {
             return -1;
         }
 
+        // Fixed number of properties per page instead of tuning it automatically
+        String pageSizeString = args.getSwitch(PropertyPager.SWITCH_PAGE_SIZE);
+        if (!StringUtil.isEmpty(pageSizeString)) {
+            setPageSize(Integer.parseInt(pageSizeString));
+        }
+
+        // Number of delete requests in flight at the same time
+        String parallelString = args.getSwitch(SWITCH_PARALLEL);
+        if (!StringUtil.isEmpty(parallelString)) {
+            setParallel(Integer.parseInt(parallelString));
+        }
+
+        // Delete the whole pattern by a single request, in case the server supports it
+        setServerSide(StringUtil.isEqual(args.getSwitch(SWITCH_SERVER_SIDE), "true"));
+
         CliPathArg pathArg = getContext().createPathArg(args.getOptionKeyAt(0));
 
         out.println("Are you sure to remote delete [" + pathArg.getRemotePattern() + "]? This step cannot be undone!");
@@ -45,40 +97,260 @@ public class DeleteCliCommand extends BaseCliCommand {
         PublishCliService publishService = getContext().getPublishService();
         publishService.load();
 
-        // TODO Return only keys, not all values (use property.keys, available since 7.0)
-        ArrayNode founds = getContext().getResolver().command(
-                new PropertyListParams().filter(PathUtil.removeExtensions(pathArg.getRemotePattern())),
-                ArrayNode.class
-               );
-
+        String filter = PathUtil.removeExtensions(pathArg.getRemotePattern());
         String propHome = PathUtil.path("/pipeforce/" + getContext().getCurrentInstance().getNamespace());
+        boolean newServer = givenNewerOrEqualThanRequired(getContext().getServerVersion(), OFFSET_REQUIRED_VERSION);
+        deletedCounter = 0;
 
-        if (founds == null) {
+        if (newServer && serverSide) {
+            deletePattern(filter, propHome, publishService);
+            publishService.save();
+            removeFromIndex(filter);
             return;
         }
 
-        for (JsonNode found : founds) {
-            String path = found.get(FIELD_PATH).textValue();
-            out.println("Delete: " + path);
+        ExecutorService executor = (parallel > 1) ? Executors.newFixedThreadPool(parallel) : null;
+        try {
+
+            if (!newServer) {
+
+                // Server version < 10.0.2 -> No offset is supported -> All properties are returned at once
+                try (PropertyPage page = getContext().getResolver().command(
+                        new PropertyListParams().filter(filter),
+                        PropertyPage.class
+                )) {
+
+                    if (page != null) {
+                        deleteProperties(page, propHome, publishService, executor);
+                    }
+                }
+            } else {
+
+                // Only keys are requested and each page is deleted before the next one is fetched
+                pager.drain((offset, limit) -> {
+
+                    PropertyListParams params = new PropertyListParams().filter(filter).offset(offset).limit(limit);
+                    params.getParamsMap().put(PropertyPage.PARAM_FIELDS, PropertyPage.FIELDS_KEYS);
+                    return getContext().getResolver().command(params, PropertyPage.class);
+
+                }, page -> {
+
+                    if (!fieldsIgnored && page.hasValues()) {
+                        fieldsIgnored = true;
+                        out.println(PropertyPage.FIELDS_IGNORED_WARNING);
+                    }
+
+                    deleteProperties(page, propHome, publishService, executor);
+                });
+            }
+        } finally {
+
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+
+            // Also keeps the entries of the properties deleted before a failure
+            publishService.save();
+        }
+
+        out.println("Deleted " + deletedCounter + " properties");
+        removeFromIndex(filter);
+    }
+
+    /**
+     * Removes the deleted keys from the local remote index, so a cached list doesn't show them anymore.
+     *
+     * @param filter
+     */
+    private void removeFromIndex(String filter) {
+
+        RemoteIndex index = new RemoteIndex(getContext().getHiddenPipeforceFolder(),
+                getContext().getCurrentInstance().getHost(), getContext().getCurrentInstance().getNamespace());
+
+        if (index.exists()) {
+            index.remove(filter);
+            index.save();
+        }
+    }
+
+    /**
+     * Deletes all properties matching the given filter by a single request. The server resolves the pattern itself,
+     * so no property has to be listed first. Therefore the deleted properties are unknown here. Instead, the registry
+     * entries are removed for all local files matching the filter, including files which never existed on the
+     * server. At worst, these files are published again next time.
+     * <p>
+     * The number of deleted properties is printed in case the server returns it.
+     *
+     * @param filter
+     * @param propHome
+     * @param publishService
+     */
+    private void deletePattern(String filter, String propHome, PublishCliService publishService) {
+
+        String pattern = PathUtil.path(propHome, filter);
+        out.println("Delete: " + pattern);
 
-            getContext().getResolver().command(new PropertySchemaDeleteParams().pattern(path), Void.class);
+        JsonNode result = getContext().getResolver().command(new PropertySchemaDeleteParams().pattern(pattern),
+                JsonNode.class);
 
-            // Remove entry from .published file
-            String type = found.get("type").textValue();
-            String ext = getContext().getMimeTypeService().getFileExtensionForMimeType(type);
-            String relPath = path.substring(propHome.length() + 1);
-            relPath = relPath + ext;
-            String targetPath = PathUtil.path(getContext().getPropertiesHomeFolder(), relPath);
-            publishService.remove(targetPath);
+        if (result != null && result.isNumber()) {
+            deletedCounter = result.intValue();
+            out.println("Deleted " + deletedCounter + " properties");
+        } else {
+            deletedCounter = -1;
+            out.println("Deleted all properties matching " + pattern);
         }
 
-        publishService.save();
+        String homePrefix = getContext().getPropertiesHomeFolder().getAbsolutePath().replace('\\', '/') + "/";
+        AntPathMatcher matcher = new AntPathMatcher();
+
+        List<String> targetPaths = new ArrayList<>();
+        for (Object key : publishService.getPublishedMap().keySet()) {
+
+            String targetPath = key + "";
+            String unixPath = targetPath.replace('\\', '/');
+            if (!unixPath.startsWith(homePrefix)) {
+                continue;
+            }
+
+            String relPath = PathUtil.removeExtensions(unixPath.substring(homePrefix.length()));
+            if (matcher.match(filter, relPath)) {
+                targetPaths.add(targetPath);
+            }
+        }
+
+        publishService.removeAll(targetPaths);
+    }
+
+    /**
+     * Deletes all properties of the given page by one request per property and removes their local files from the
+     * registry at once. In case an executor is given, the requests are sent by its threads at the same time.
+     * Otherwise one after another.
+     *
+     * @param page
+     * @param propHome
+     * @param publishService
+     * @param executor       The executor or null.
+     */
+    private void deleteProperties(PropertyPage page, String propHome, PublishCliService publishService,
+                                  ExecutorService executor) {
+
+        List<String> targetPaths = new ArrayList<>();
+        int failedCounter = 0;
+
+        try {
+
+            if (executor == null) {
+
+                for (PropertyPage.Property found : page.getProperties()) {
+                    out.println("Delete: " + found.getPath());
+                    deleteProperty(found);
+                    targetPaths.add(toTargetPath(found, propHome));
+                }
+
+                return;
+            }
+
+            CompletionService<PropertyPage.Property> completionService = new ExecutorCompletionService<>(executor);
+            for (PropertyPage.Property found : page.getProperties()) {
+                completionService.submit(() -> {
+                    deleteProperty(found);
+                    return found;
+                });
+            }
+
+            for (PropertyPage.Property found : page.getProperties()) {
+
+                try {
+                    PropertyPage.Property deleted = completionService.take().get();
+                    out.println("Delete: " + deleted.getPath());
+                    targetPaths.add(toTargetPath(deleted, propHome));
+                } catch (ExecutionException e) {
+                    failedCounter++;
+                    out.println("Delete failed: " + e.getCause().getMessage());
+                }
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CliException("Delete has been interrupted: " + e.getMessage(), e);
+        } finally {
+            deletedCounter = deletedCounter + targetPaths.size();
+            publishService.removeAll(targetPaths);
+        }
+
+        if (failedCounter > 0) {
+            throw new CliException("Could not delete " + failedCounter + " properties");
+        }
+    }
+
+    private void deleteProperty(PropertyPage.Property found) {
+        getContext().getResolver().command(new PropertySchemaDeleteParams().pattern(found.getPath()), Void.class);
+    }
+
+    /**
+     * @param found
+     * @param propHome
+     * @return The path of the local file of the given property, as used by the registry.
+     */
+    private String toTargetPath(PropertyPage.Property found, String propHome) {
+
+        String ext = getContext().getMimeTypeService().getFileExtensionForMimeType(found.getType());
+        String relPath = found.getPath().substring(propHome.length() + 1);
+        relPath = relPath + ext;
+        return PathUtil.path(getContext().getPropertiesHomeFolder(), relPath);
+    }
+
+    /**
+     * Sets the number of delete requests sent at the same time, in case each property is deleted by its own
+     * request.
+     *
+     * @param parallel Must be between 1 and {@link #MAX_PARALLEL}.
+     */
+    public void setParallel(int parallel) {
+
+        if (parallel < 1 || parallel > MAX_PARALLEL) {
+            throw new CliException("Switch " + SWITCH_PARALLEL + " must be between 1 and " + MAX_PARALLEL + ": " +
+                    parallel);
+        }
+
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param serverSide If true, the whole pattern is deleted by a single request in case the server supports it.
+     *                   Default is false.
+     */
+    public void setServerSide(boolean serverSide) {
+        this.serverSide = serverSide;
+    }
+
+    /**
+     * @return The number of properties deleted by the last delete or -1 in case the server didn't report it.
+     */
+    public int getDeletedCounter() {
+        return deletedCounter;
+    }
+
+    /**
+     * Sets a fixed number of properties to fetch per request. By default, the page size is tuned automatically.
+     *
+     * @param pageSize Must be between 1 and {@link PropertyPager#MAX_PAGE_SIZE}.
+     */
+    public void setPageSize(int pageSize) {
+        this.pager = new PropertyPager(pageSize);
     }
 
     public String getUsageHelp() {
-        return "pi delete <PROPERTY_PATH_PATTERN>\n" +
+        return "pi delete [--serverSide:true] [--parallel:1-" + MAX_PARALLEL + "] [--pageSize:N] " +
+                "<PROPERTY_PATH_PATTERN>\n" +
                 "   Deletes the given remote properties from server.\n" +
                 "   Doesn't delete any local file.\n" +
+                "   Lists the properties and deletes each of them by its own request.\n" +
+                "   --serverSide:true deletes the whole pattern by a single request, if supported by the server.\n" +
+                "     Then the publish registry entries of all local files matching the pattern are removed.\n" +
+                "   --parallel sets the number of delete requests sent at the same time. Default is 1.\n" +
+                "   --pageSize sets the number of properties per page. By default, it is tuned automatically.\n" +
                 "   Examples:\n" +
                 "     pi delete global/app/myapp/pipeline/test - Deletes the pipeline: test.\n" +
                 "     pi delete global/app/myapp/** - Deletes recursively all inside myapp.\n" +
@@ -1,23 +1,39 @@
 package com.logabit.pipeforce.cli.command;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.logabit.pipeforce.cli.CliException;
 import com.logabit.pipeforce.cli.CliPathArg;
 import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.PropertyPage;
+import com.logabit.pipeforce.cli.PropertyPager;
+import com.logabit.pipeforce.cli.service.AsyncFileWriter;
+import com.logabit.pipeforce.cli.service.GetHighWaterMarks;
+import com.logabit.pipeforce.cli.service.MimeTypeCliService;
 import com.logabit.pipeforce.cli.service.PublishCliService;
+import com.logabit.pipeforce.cli.service.RemoteIndex;
 import com.logabit.pipeforce.common.command.stub.PropertyListParams;
-import com.logabit.pipeforce.common.content.model.ContentType;
-import com.logabit.pipeforce.common.content.service.MimeTypeService;
 import com.logabit.pipeforce.common.net.ClientPipeforceURIResolver;
-import com.logabit.pipeforce.common.property.IProperty;
-import com.logabit.pipeforce.common.util.EncodeUtil;
 import com.logabit.pipeforce.common.util.ListUtil;
 import com.logabit.pipeforce.common.util.PathUtil;
 import com.logabit.pipeforce.common.util.StringUtil;
+import org.springframework.web.client.HttpClientErrorException;
 
 import java.io.File;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static com.logabit.pipeforce.common.util.VersionUtil.givenNewerOrEqualThanRequired;
 
@@ -29,11 +45,98 @@ import static com.logabit.pipeforce.common.util.VersionUtil.givenNewerOrEqualTha
  */
 public class GetCliCommand extends BaseCliCommand {
 
+    public static final String SWITCH_PREFETCH = "prefetch";
+
+    public static final String SWITCH_PARALLEL = "parallel";
+
+    public static final String SWITCH_INCREMENTAL = "incremental";
+
+    public static final String SWITCH_FULL = "full";
+
+    public static final String SWITCH_WRITERS = "writers";
+
+    /**
+     * The property.list parameter to request only properties updated (or created) at or after a given timestamp.
+     */
+    public static final String PARAM_UPDATED_SINCE = "updatedSince";
+
+    /**
+     * The high-water mark is set back by this duration, so the next incremental get fetches these properties again.
+     * Covers properties changed on an earlier page while the get was running and a clock of the server running
+     * behind the local one.
+     */
+    public static final long HIGH_WATER_MARK_OVERLAP_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Printed once in case an incremental get receives properties not changed since the requested timestamp.
+     */
+    public static final String UPDATED_SINCE_IGNORED_WARNING = "Warning: The server ignores the " +
+            PARAM_UPDATED_SINCE + " parameter and sends all properties. Incremental get fetches everything.";
+
+    /**
+     * The max. number of pages to fetch ahead while the current page is written.
+     */
+    public static final int MAX_PREFETCH = 16;
+
+    /**
+     * The max. number of page requests in flight at the same time. Protects the server from being flooded.
+     */
+    public static final int MAX_PARALLEL = 8;
+
+    /**
+     * The max. number of files written at the same time.
+     */
+    public static final int MAX_WRITERS = 16;
+
+    /**
+     * The number of files per writer which can be waiting to be written before fetching is paused.
+     */
+    private static final int PENDING_WRITES_PER_WRITER = 4;
+
+    /**
+     * Paging using offset is supported since this server version.
+     */
+    private static final int[] OFFSET_REQUIRED_VERSION = new int[]{10, 0, 2, 0};
+
+    private int prefetch = 1;
+
+    private int parallel = 1;
+
+    private int writers = 4;
+
+    private AsyncFileWriter fileWriter;
+
+    /**
+     * Files submitted to the file writer in the order of submission. Added to the registry once written.
+     */
+    private final Deque<WrittenFile> writtenFiles = new ArrayDeque<>();
+
+    private PropertyPager pager = new PropertyPager();
+
+    private boolean incremental = false;
+
+    private boolean full = false;
+
+    /**
+     * Only properties changed since this timestamp are requested. 0 = All properties.
+     */
+    private long updatedSince = 0;
+
+    /**
+     * The latest updated (or created) timestamp of all properties received so far. Since pages are fetched one
+     * after another, it can be after a change on an earlier page. See {@link #HIGH_WATER_MARK_OVERLAP_MILLIS}.
+     */
+    private long highWaterMark = 0;
+
+    private boolean updatedSinceIgnored = false;
+
+    private boolean cancelled = false;
+
     private PublishCliService publishService;
 
     private ClientPipeforceURIResolver pi;
 
-    private MimeTypeService mimeTypeService;
+    private MimeTypeCliService mimeTypeService;
 
     private int rememberOverwriteAnswer = -1;
 
@@ -45,10 +148,14 @@ public class GetCliCommand extends BaseCliCommand {
 
     private int skippedCounter = 0;
 
+    private int unchangedCounter = 0;
+
     private String pathPrefix;
 
     private int[] serverVersion;
 
+    private RemoteIndex remoteIndex;
+
     @Override
     public int call(CommandArgs args) {
 
@@ -60,6 +167,37 @@ public class GetCliCommand extends BaseCliCommand {
             includeData = true;
         }
 
+        // Number of pages to fetch ahead while writing the current one
+        String prefetchString = args.getSwitch(SWITCH_PREFETCH);
+        if (!StringUtil.isEmpty(prefetchString)) {
+            setPrefetch(Integer.parseInt(prefetchString));
+        }
+
+        // Number of page requests in flight at the same time
+        String parallelString = args.getSwitch(SWITCH_PARALLEL);
+        if (!StringUtil.isEmpty(parallelString)) {
+            setParallel(Integer.parseInt(parallelString));
+        }
+
+        // Fixed number of properties per page instead of tuning it automatically
+        String pageSizeString = args.getSwitch(PropertyPager.SWITCH_PAGE_SIZE);
+        if (!StringUtil.isEmpty(pageSizeString)) {
+            setPageSize(Integer.parseInt(pageSizeString));
+        }
+
+        // Number of files written at the same time
+        String writersString = args.getSwitch(SWITCH_WRITERS);
+        if (!StringUtil.isEmpty(writersString)) {
+            setWriters(Integer.parseInt(writersString));
+        }
+
+        // Only changed properties? Can be given as --incremental or --incremental:true
+        setIncremental(args.getSwitches().containsKey(SWITCH_INCREMENTAL) &&
+                !"false".equals(args.getSwitch(SWITCH_INCREMENTAL)));
+
+        // Get all properties once, also in incremental mode
+        full = StringUtil.isEqual(args.getSwitch(SWITCH_FULL), "true");
+
         return execute(pathArg, targetFolder, includeData);
     }
 
@@ -76,59 +214,334 @@ public class GetCliCommand extends BaseCliCommand {
         mimeTypeService = getContext().getMimeTypeService();
         pathPrefix = PathUtil.path("/pipeforce", getContext().getCurrentInstance().getNamespace());
         serverVersion = getContext().getServerVersion();
-        int[] requiredVersion = new int[]{10, 0, 2, 0};
-        int offset = 0;
-        ArrayNode list;
 
-        int batchIndex = 1;
-        do {
+        // The received keys are added to an existing index of pi list --cached:true
+        remoteIndex = new RemoteIndex(getContext().getHiddenPipeforceFolder(),
+                getContext().getCurrentInstance().getHost(), getContext().getCurrentInstance().getNamespace());
+        if (!remoteIndex.exists()) {
+            remoteIndex = null;
+        }
 
-            list = pi.command(
-                    new PropertyListParams()
-                            .pattern(pathArg.getRemotePattern())
-                            .excludePatterns(excludeDataPattern)
-                            .offset(offset)
-                            .limit(100),
-                    ArrayNode.class
-            );
+        GetHighWaterMarks highWaterMarks = null;
+        String highWaterMarkKey = null;
+        if (incremental) {
+            highWaterMarks = new GetHighWaterMarks(getContext().getHiddenPipeforceFolder());
+            highWaterMarkKey = GetHighWaterMarks.toKey(getContext().getCurrentInstance().getHost(),
+                    getContext().getCurrentInstance().getNamespace(), pathArg.getRemotePattern(), excludeDataPattern,
+                    targetFolder.getAbsolutePath());
 
-            if (list == null) {
-                break;
+            if (!full) {
+                updatedSince = highWaterMarks.get(highWaterMarkKey);
             }
+        }
 
-            processReceivedProperties(list, targetFolder);
-            offset = offset + list.size();
+        if (updatedSince > 0) {
+            out.println("Get only properties changed since " + Instant.ofEpochMilli(updatedSince) +
+                    ". Use --" + SWITCH_FULL + ":true to get all.");
+        }
 
-            if (list.size() > 0) {
-                out.println("Batch: " + batchIndex + " | Fetched: " + list.size() + " | Overall: " + offset);
-            }
+        // Changes on pages fetched already are not noticed during this get -> The mark must not be after the start
+        long fetchStart = System.currentTimeMillis();
 
-            batchIndex = batchIndex + 1;
+        fileWriter = new AsyncFileWriter(out, writers, writers * PENDING_WRITES_PER_WRITER);
+        try {
+            fetch(pathArg.getRemotePattern(), excludeDataPattern, targetFolder);
+        } catch (RuntimeException e) {
 
-            // Server version < 10.0.2 -> No offset is supported
-            if (!(givenNewerOrEqualThanRequired(serverVersion, requiredVersion))) {
-                break;
+            if (updatedSince == 0 || filesCounter > 0 || !isBadRequest(e)) {
+                throw e;
             }
 
-        } while (list.size() > 0);
+            // Nothing received yet and request rejected -> Server doesn't support the filter -> Fall back to get all
+            out.println("Incremental get failed: " + e.getMessage() + ". Getting all properties.");
+            updatedSince = 0;
+            fetch(pathArg.getRemotePattern(), excludeDataPattern, targetFolder);
+        } finally {
+            fileWriter.close(); // Waits for all pending writes
+        }
 
+        registerWrittenFiles(true);
         publishService.save();
 
+        if (remoteIndex != null) {
+            remoteIndex.save();
+        }
+
+        // Only a complete get moves the high-water mark
+        long mark = Math.min(highWaterMark, fetchStart) - HIGH_WATER_MARK_OVERLAP_MILLIS;
+        if (highWaterMarks != null && !cancelled && mark > updatedSince) {
+            highWaterMarks.put(highWaterMarkKey, mark);
+            highWaterMarks.save();
+        }
+
         out.println("Finished get of " + filesCounter + " files. " + createdCounter +
-                " created. " + updatedCounter + " updated. " + skippedCounter + " skipped.");
+                " created. " + updatedCounter + " updated. " + unchangedCounter + " unchanged. " + skippedCounter + " skipped.");
 
         return 0;
     }
 
-    private void processReceivedProperties(ArrayNode list, File targetFolder) {
+    /**
+     * @param e
+     * @return True in case the given exception or one of its causes is a HTTP 400 response, as sent by servers not
+     * supporting a request parameter.
+     */
+    private static boolean isBadRequest(Throwable e) {
+
+        while (e != null) {
+
+            if (e instanceof HttpClientErrorException && ((HttpClientErrorException) e).getRawStatusCode() == 400) {
+                return true;
+            }
+
+            e = e.getCause();
+        }
+
+        return false;
+    }
+
+    private void fetch(String pattern, String excludePattern, File targetFolder) {
+
+        if (givenNewerOrEqualThanRequired(serverVersion, OFFSET_REQUIRED_VERSION)) {
+            fetchPipelined(pattern, excludePattern, targetFolder);
+            return;
+        }
+
+        // Server version < 10.0.2 -> No offset is supported -> All properties are returned at once
+        try (PropertyPage page = fetchPage(pattern, excludePattern, 0, pager.getPageSize())) {
+
+            if (page != null && page.size() > 0) {
+                processReceivedProperties(page, targetFolder);
+                out.println("Batch: 1 | Fetched: " + page.size() + " | Overall: " + page.size());
+            }
+        }
+    }
+
+    /**
+     * Fetches the pages of the given pattern and writes them. While a page is written, the next {@link #prefetch}
+     * pages are already fetched, using up to {@link #parallel} requests at the same time. Pages are always
+     * written in the order of their offset.
+     * <p>
+     * Each page is requested with the page size of the {@link PropertyPager} at the time it is submitted, so the
+     * size adapts to the pages received so far. Offsets of pages fetched ahead expect full pages. In case the
+     * server returns less properties than requested, all pages fetched ahead are dropped and fetching continues
+     * right after the properties received so far, again with {@link #prefetch} pages ahead. So the result is
+     * always the same as fetching page by page. Since the server might cap the page size, later pages are never
+     * requested with more properties than such a short page contained.
+     *
+     * @param pattern
+     * @param excludePattern
+     * @param targetFolder
+     */
+    private void fetchPipelined(String pattern, String excludePattern, File targetFolder) {
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallel);
+        PropertyPager.PageFetcher fetcher = (pageOffset, limit) -> fetchPage(pattern, excludePattern, pageOffset,
+                limit);
+        Deque<Page> pages = new ArrayDeque<>();
+        int depth = Math.max(prefetch, parallel - 1); // Pages fetched ahead of the current one
+        int offset = 0;
+        int nextOffset = 0;
+        int maxLimit = Integer.MAX_VALUE;
+        int batchIndex = 1;
+
+        try {
+
+            for (int i = 0; i <= depth; i++) {
+                pages.add(submitPage(executor, fetcher, nextOffset, maxLimit));
+                nextOffset = nextOffset + pages.getLast().limit;
+            }
+
+            while (!pages.isEmpty()) {
+
+                Page page = pages.poll();
+                try (PropertyPage list = page.future.get()) {
+
+                    if (list == null || list.size() == 0) {
+                        break;
+                    }
+
+                    offset = offset + list.size();
+
+                    if (list.size() < page.limit) {
+
+                        // Last page or server returned less than requested -> Pages fetched ahead could be wrong
+                        discard(pages);
+                        nextOffset = offset;
+                        maxLimit = list.size();
+                    }
+
+                    // The pages ahead are fetched while this one is written
+                    processReceivedProperties(list, targetFolder);
+                    out.println("Batch: " + batchIndex + " | Fetched: " + list.size() + " | Overall: " + offset);
+                    batchIndex = batchIndex + 1;
+                }
+
+                while (pages.size() <= depth) {
+                    pages.add(submitPage(executor, fetcher, nextOffset, maxLimit));
+                    nextOffset = nextOffset + pages.getLast().limit;
+                }
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CliException("Get has been interrupted: " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new CliException("Could not fetch properties: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+            discard(pages);
+        }
+    }
+
+    /**
+     * Cancels the given pages and deletes the temp files of the ones already fetched.
+     *
+     * @param pages
+     */
+    private void discard(Deque<Page> pages) {
 
-        for (JsonNode node : list) {
+        for (Page page : pages) {
+
+            if (page.future.cancel(true)) {
+                continue;
+            }
+
+            try {
+                PropertyPage fetched = page.future.get();
+                if (fetched != null) {
+                    fetched.close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Failed pages have no temp file
+            }
+        }
+
+        pages.clear();
+    }
+
+    /**
+     * @param executor
+     * @param fetcher
+     * @param offset
+     * @param maxLimit The max. number of properties to request, even if the page size of the pager is bigger.
+     * @return
+     */
+    private Page submitPage(ExecutorService executor, PropertyPager.PageFetcher fetcher, int offset, int maxLimit) {
+
+        int limit = Math.min(pager.getPageSize(), maxLimit);
+        return new Page(limit, executor.submit(() -> pager.fetch(fetcher, offset, limit)));
+    }
+
+    private PropertyPage fetchPage(String pattern, String excludePattern, int offset, int limit) {
+
+        PropertyListParams params = new PropertyListParams()
+                .pattern(pattern)
+                .excludePatterns(excludePattern)
+                .offset(offset)
+                .limit(limit);
+
+        if (updatedSince > 0) {
+            params.getParamsMap().put(PARAM_UPDATED_SINCE, updatedSince);
+        }
+
+        return pi.command(params, PropertyPage.class);
+    }
+
+    /**
+     * Sets the number of pages to fetch ahead while the current page is written.
+     *
+     * @param prefetch Must be between 0 and {@link #MAX_PREFETCH}.
+     */
+    public void setPrefetch(int prefetch) {
+
+        if (prefetch < 0 || prefetch > MAX_PREFETCH) {
+            throw new CliException("Switch " + SWITCH_PREFETCH + " must be between 0 and " + MAX_PREFETCH + ": " +
+                    prefetch);
+        }
+
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Sets the number of page requests in flight at the same time. Requires server version >= 10.0.2.
+     *
+     * @param parallel Must be between 1 and {@link #MAX_PARALLEL}.
+     */
+    public void setParallel(int parallel) {
+
+        if (parallel < 1 || parallel > MAX_PARALLEL) {
+            throw new CliException("Switch " + SWITCH_PARALLEL + " must be between 1 and " + MAX_PARALLEL + ": " +
+                    parallel);
+        }
+
+        this.parallel = parallel;
+    }
+
+    /**
+     * If true, only the properties changed since the last complete incremental get of the same pattern into the
+     * same folder are requested. Properties deleted locally or declined to overwrite since then are not offered
+     * again, until they change on the server or a full get is done. Default is false.
+     *
+     * @param incremental
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Sets a fixed number of properties to fetch per request. By default, the page size is tuned automatically.
+     *
+     * @param pageSize Must be between 1 and {@link PropertyPager#MAX_PAGE_SIZE}.
+     */
+    public void setPageSize(int pageSize) {
+        this.pager = new PropertyPager(pageSize);
+    }
+
+    /**
+     * Sets the number of files written at the same time.
+     *
+     * @param writers Must be between 1 and {@link #MAX_WRITERS}.
+     */
+    public void setWriters(int writers) {
+
+        if (writers < 1 || writers > MAX_WRITERS) {
+            throw new CliException("Switch " + SWITCH_WRITERS + " must be between 1 and " + MAX_WRITERS + ": " +
+                    writers);
+        }
+
+        this.writers = writers;
+    }
+
+    /**
+     * Decides for each property of the given page whether to write it and then submits the properties to write
+     * to the file writer. Their values are streamed from the page into their local files by the writer threads.
+     * Blocks in case the file writer is busy.
+     *
+     * @param page
+     * @param targetFolder
+     */
+    private void processReceivedProperties(PropertyPage page, File targetFolder) {
+
+        Map<PropertyPage.Property, File> targetFiles = new LinkedHashMap<>();
+
+        for (PropertyPage.Property property : page.getProperties()) {
+
+            highWaterMark = Math.max(highWaterMark, getLastModified(property));
+
+            if (updatedSince > 0 && !updatedSinceIgnored && getLastModified(property) < updatedSince) {
+                updatedSinceIgnored = true;
+                out.println(UPDATED_SINCE_IGNORED_WARNING);
+            }
 
             // /pipeforce/NAMESPACE/global/app/...
-            String path = node.get(IProperty.FIELD_PATH).textValue();
+            String path = property.getPath();
+            String type = property.getType();
 
-            String type = node.get("type").textValue();
-            ContentType contentType = new ContentType(type);
+            if (remoteIndex != null && path.startsWith(pathPrefix + "/")) {
+                remoteIndex.update(path.substring(pathPrefix.length() + 1), type, getLastModified(property));
+            }
 
             // /pipeforce/NAMESPACE/global/app... -> global/app...
             int prefixIndex = path.indexOf("global/app/");
@@ -140,22 +553,28 @@ public class GetCliCommand extends BaseCliCommand {
             // e.g. /Users/someUser/pipeforce/src/....
             String fullLocalPath = PathUtil.path(targetFolder.getAbsolutePath(), relLocalPath);
 
-            long updated = node.get("updated").longValue();
-            if (updated == 0) {
-                updated = node.get("created").longValue();
-            }
+            long updated = getLastModified(property);
 
             filesCounter++;
             File localPropertyFile = new File(fullLocalPath);
-            boolean questionAsked = false;
             if (localPropertyFile.exists()) {
 
-                if (localPropertyFile.lastModified() == updated) {
+                if (localPropertyFile.lastModified() == updated ||
+                        publishService.isDownloaded(localPropertyFile, updated)) {
                     out.println("skipped");
                     skippedCounter++;
                     continue; // Local file has same lastModified as remote file -> Do dont update, do not ask
                 }
 
+                // Only the timestamp changed, for example by a re-save on the server -> No need to ask
+                String digest = getDigestIfSame(page, property, localPropertyFile);
+                if (digest != null) {
+                    publishService.add(localPropertyFile, updated, digest);
+                    out.println("unchanged");
+                    unchangedCounter++;
+                    continue;
+                }
+
                 int selection;
                 if (rememberOverwriteAnswer != -1) {
                     selection = rememberOverwriteAnswer;
@@ -164,7 +583,6 @@ public class GetCliCommand extends BaseCliCommand {
                     List<String> items = ListUtil.asList("yes", "yes-all", "no", "no-all", "cancel");
                     out.println("File already exists. Overwrite?");
                     selection = in.choose(items, "no");
-                    questionAsked = true;
 
                     if (selection == 1 || selection == 3) {
                         rememberOverwriteAnswer = selection; // Remember for next cycle
@@ -184,7 +602,8 @@ public class GetCliCommand extends BaseCliCommand {
 
                 if (selection == 4) {
                     skippedCounter++;
-                    return; // Cancel the command
+                    cancelled = true;
+                    break; // Cancel the command, but write the ones decided so far
                 }
 
                 out.println("updated");
@@ -194,31 +613,165 @@ public class GetCliCommand extends BaseCliCommand {
                 createdCounter++;
             }
 
-            if ("base64".equals(contentType.getEncodingParameter())) {
-                byte[] data = EncodeUtil.fromBase64ToBytes(node.get("value").textValue());
-                out.saveByteArrayToFile(data, localPropertyFile);
-            } else {
-                String text = node.get("value").textValue();
+            targetFiles.put(property, localPropertyFile);
+        }
 
-                if (text != null) {
-                    byte[] data = text.getBytes(StandardCharsets.UTF_8);
-                    out.saveByteArrayToFile(data, localPropertyFile);
-                }
+        for (Map.Entry<PropertyPage.Property, File> targetFile : targetFiles.entrySet()) {
+
+            PropertyPage.Property property = targetFile.getKey();
+            File localPropertyFile = targetFile.getValue();
+
+            // The page must exist until the value has been written
+            page.retain();
+
+            CompletableFuture<AsyncFileWriter.Result> write;
+            try {
+                write = fileWriter.write(localPropertyFile, getLastModified(property),
+                        os -> page.writeValue(property, os));
+            } catch (InterruptedException e) {
+                page.close();
+                Thread.currentThread().interrupt();
+                throw new CliException("Get has been interrupted: " + e.getMessage(), e);
+            }
+
+            write.whenComplete((result, error) -> page.close());
+            writtenFiles.add(new WrittenFile(localPropertyFile, getLastModified(property), write));
+        }
+
+        registerWrittenFiles(false);
+    }
+
+    /**
+     * Compares the value of the given property with the content of the given local file. The value is streamed
+     * from the page through the digest, so it is never held in memory. The local file is only read in case the
+     * size is the same.
+     *
+     * @param page
+     * @param property
+     * @param localFile
+     * @return The digest in case the content is the same. Otherwise null.
+     */
+    private String getDigestIfSame(PropertyPage page, PropertyPage.Property property, File localFile) {
+
+        long[] size = new long[1];
+        OutputStream counter = new OutputStream() {
+
+            @Override
+            public void write(int b) {
+                size[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                size[0] = size[0] + len;
+            }
+        };
+
+        MessageDigest messageDigest = PublishCliService.createMessageDigest();
+        page.writeValue(property, new DigestOutputStream(counter, messageDigest));
+
+        if (size[0] != localFile.length()) {
+            return null;
+        }
+
+        String digest = PublishCliService.toDigest(messageDigest);
+        return digest.equals(PublishCliService.createDigest(localFile)) ? digest : null;
+    }
+
+    /**
+     * Adds the files written so far to the registry, in the order they have been submitted.
+     *
+     * @param wait If true, waits until all files have been written.
+     */
+    private void registerWrittenFiles(boolean wait) {
+
+        while (!writtenFiles.isEmpty() && (wait || writtenFiles.peek().write.isDone())) {
+
+            WrittenFile writtenFile = writtenFiles.poll();
+
+            AsyncFileWriter.Result result;
+            try {
+                result = writtenFile.write.join();
+            } catch (CompletionException e) {
+                throw new CliException("Could not write " + writtenFile.file + ": " + e.getCause().getMessage(),
+                        e.getCause());
+            }
+
+            if (!result.isWritten()) {
+
+                // Same content already exists -> File was left untouched
+                unchangedCounter++;
+                updatedCounter--;
             }
-            localPropertyFile.setLastModified(updated);
 
-            publishService.add(fullLocalPath, updated);
+            publishService.add(writtenFile.file, writtenFile.remoteLastModified, result.getDigest());
+        }
+    }
+
+    private long getLastModified(PropertyPage.Property property) {
+
+        long updated = property.getUpdated();
+        if (updated == 0) {
+            updated = property.getCreated();
+        }
+
+        return updated;
+    }
+
+    /**
+     * A page requested from the server.
+     */
+    private static class Page {
+
+        private final int limit;
+
+        private final Future<PropertyPage> future;
+
+        private Page(int limit, Future<PropertyPage> future) {
+            this.limit = limit;
+            this.future = future;
+        }
+    }
+
+    /**
+     * A file submitted to the file writer.
+     */
+    private static class WrittenFile {
+
+        private final File file;
+
+        private final long remoteLastModified;
+
+        private final CompletableFuture<AsyncFileWriter.Result> write;
+
+        private WrittenFile(File file, long remoteLastModified, CompletableFuture<AsyncFileWriter.Result> write) {
+            this.file = file;
+            this.remoteLastModified = remoteLastModified;
+            this.write = write;
         }
     }
 
     public String getUsageHelp() {
-        return "pi get [--includeData:true] <PROPERTY_PATH_PATTERN>\n" +
+        return "pi get [--includeData:true] [--prefetch:0-" + MAX_PREFETCH + "] [--parallel:1-" + MAX_PARALLEL +
+                "] [--pageSize:N] [--writers:1-" + MAX_WRITERS + "] [--incremental] [--full:true] " +
+                "<PROPERTY_PATH_PATTERN>\n" +
                 "   Downloads all remote properties of the pattern into its local properties home folder.\n" +
+                "   --incremental requests only the properties changed since the last incremental get of the same\n" +
+                "     pattern. Local files deleted or not overwritten since then are skipped until the property\n" +
+                "     changes on the server again.\n" +
+                "   --full:true gets all properties once in incremental mode, for example to restore deleted\n" +
+                "     local files.\n" +
+                "   Existing files with the same content are left untouched.\n" +
                 "   By default, app data is excluded since version >= 10.0.2.\n" +
+                "   --prefetch sets the number of pages fetched ahead while writing files. Default is 1.\n" +
+                "   --parallel sets the number of pages fetched at the same time. Default is 1.\n" +
+                "   --pageSize sets the number of properties per page. By default, it is tuned automatically.\n" +
+                "   --writers sets the number of files written at the same time. Default is 4.\n" +
                 "   Examples:\n" +
                 "     pi get global/app/myapp/** - Downloads all resources recursively.\n" +
                 "     pi get global/app/myapp/* - Downloads all resources. Not recursively.\n" +
                 "     pi get global/app/*/pipeline/* - Downloads all pipelines of all apps.\n" +
-                "     pi get --includeData:true global/app/myapp/ - Short-cut of global/app/myapp/**.";
+                "     pi get --includeData:true global/app/myapp/ - Short-cut of global/app/myapp/**.\n" +
+                "     pi get --includeData:true --parallel:4 global/app/myapp/data/** - Fetches 4 pages at once.";
     }
 }
@@ -1,14 +1,19 @@
 package com.logabit.pipeforce.cli.command;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.logabit.pipeforce.cli.AdaptiveRateLimiter;
+import com.logabit.pipeforce.cli.CliException;
 import com.logabit.pipeforce.cli.CliPathArg;
 import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.PropertyImportBody;
+import com.logabit.pipeforce.cli.service.ImportJournal;
+import com.logabit.pipeforce.cli.service.MimeTypeCliService;
 import com.logabit.pipeforce.common.command.stub.PropertyImportParams;
 import com.logabit.pipeforce.common.content.model.ContentType;
-import com.logabit.pipeforce.common.content.service.MimeTypeService;
 import com.logabit.pipeforce.common.util.DateTimeUtil;
-import com.logabit.pipeforce.common.util.EncodeUtil;
 import com.logabit.pipeforce.common.util.FileUtil;
 import com.logabit.pipeforce.common.util.FilenameUtil;
 import com.logabit.pipeforce.common.util.JsonUtil;
@@ -25,15 +30,18 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 
-import static com.logabit.pipeforce.common.property.IProperty.FIELD_PATH;
-import static com.logabit.pipeforce.common.property.IProperty.FIELD_TYPE;
-import static com.logabit.pipeforce.common.property.IProperty.FIELD_UUID;
-import static com.logabit.pipeforce.common.property.IProperty.FIELD_VALUE;
+import static org.apache.http.entity.ContentType.APPLICATION_JSON;
 
 /**
  * Imports a huge amount if properties.
@@ -55,6 +63,78 @@ public class ImportCliCommand extends BaseCliCommand {
 
     public static final String SWITCH_BATCH_SIZE = "batchSize";
 
+    public static final String SWITCH_BATCH_BYTES = "batchBytes";
+
+    /**
+     * The default max. sum of file sizes in bytes to be sent in a single batch.
+     * A single file bigger than this is sent alone.
+     */
+    public static final long DEFAULT_BATCH_BYTES = 4 * 1024 * 1024;
+
+    public static final String SWITCH_TARGET_LATENCY = "targetLatency";
+
+    public static final String SWITCH_CONCURRENCY = "concurrency";
+
+    public static final int MAX_CONCURRENCY = 16;
+
+    public static final String SWITCH_RESUME = "resume";
+
+    public static final String SWITCH_READERS = "readers";
+
+    public static final int MAX_READERS = 32;
+
+    /**
+     * How often a batch is sent in case the server is overloaded.
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Adapts the rate of batches to the server. Null in case a fixed waitBetween was given.
+     */
+    private AdaptiveRateLimiter rateLimiter;
+
+    private int concurrency = 1;
+
+    /**
+     * The number of threads reading and encoding the files of the batches.
+     */
+    private int readers = Math.min(Runtime.getRuntime().availableProcessors(), MAX_READERS);
+
+    private ExecutorService readerExecutor;
+
+    private ExecutorService senderExecutor;
+
+    /**
+     * The batches finished by the pipeline, successfully or not, to be collected by the walker thread.
+     */
+    private final BlockingQueue<ImportBatch> doneBatches = new LinkedBlockingQueue<>();
+
+    /**
+     * The number of batches submitted to the pipeline but not yet collected.
+     */
+    private int inFlight;
+
+    private String srcHome;
+
+    private boolean deployWithExtension;
+
+    private int batchCounter;
+
+    private long importedCounter;
+
+    private final List<ImportBatch> failedBatches = new ArrayList<>();
+
+    private boolean resume;
+
+    private ImportJournal journal;
+
+    /**
+     * The files skipped since they were imported by the previous import already.
+     */
+    private long skippedCounter;
+
     @Override
     public int call(CommandArgs args) throws Exception {
 
@@ -75,16 +155,46 @@ public class ImportCliCommand extends BaseCliCommand {
             recurse = switches.get(SWITCH_RECURSE).equals("true");
         }
 
-        int waitBetween = 50;
+        // A fixed wait between the batches disables the adaptive rate
+        int waitBetween = -1;
         if (switches.containsKey(SWITCH_WAIT_BETWEEN)) {
             waitBetween = Integer.parseInt(switches.get(SWITCH_WAIT_BETWEEN));
         }
 
+        long targetLatency = AdaptiveRateLimiter.DEFAULT_TARGET_LATENCY_MILLIS;
+        if (switches.containsKey(SWITCH_TARGET_LATENCY)) {
+            targetLatency = Long.parseLong(switches.get(SWITCH_TARGET_LATENCY));
+        }
+
+        rateLimiter = (waitBetween < 0) ? new AdaptiveRateLimiter(targetLatency) : null;
+
+        if (switches.containsKey(SWITCH_CONCURRENCY)) {
+            setConcurrency(Integer.parseInt(switches.get(SWITCH_CONCURRENCY)));
+        }
+
+        if (switches.containsKey(SWITCH_READERS)) {
+            setReaders(Integer.parseInt(switches.get(SWITCH_READERS)));
+        }
+
+        // --resume or -resume:true
+        resume = switches.containsKey(SWITCH_RESUME) &&
+                (switches.get(SWITCH_RESUME) == null || switches.get(SWITCH_RESUME).equals("true"));
+
         int batchSize = 50;
         if (switches.containsKey(SWITCH_BATCH_SIZE)) {
             batchSize = Integer.parseInt(switches.get(SWITCH_BATCH_SIZE));
         }
 
+        long batchBytes = DEFAULT_BATCH_BYTES;
+        if (switches.containsKey(SWITCH_BATCH_BYTES)) {
+            batchBytes = Long.parseLong(switches.get(SWITCH_BATCH_BYTES));
+        }
+
+        if (batchSize < 1 || batchBytes < 1) {
+            throw new CliException("Switches " + SWITCH_BATCH_SIZE + " and " + SWITCH_BATCH_BYTES +
+                    " must be greater than 0.");
+        }
+
         // Where is the uuid located? filename (without suffix)? For example: 00ac3c0a-40c1-4551-aeff-368ba449c51a.json
         // or field uuid?
         String uuidLocation = null;
@@ -123,112 +233,283 @@ public class ImportCliCommand extends BaseCliCommand {
         long overallFilesCounter = FileUtil.getNumberOfFilesInFolder(folderPath.toFile(), recurse);
         out.println("Import " + overallFilesCounter + " files from " + pathArg.getLocalFile() + "?");
         out.println("Config: strategy:" + existStrategy + ", uuidLocation:" + uuidLocation +
-                ", removeUuidField:" + removeUuidField + ", recurse:" + recurse + ", waitBetween:" + waitBetween +
-                ", batchSize:" + batchSize);
+                ", removeUuidField:" + removeUuidField + ", recurse:" + recurse + ", " +
+                (rateLimiter == null ? "waitBetween:" + waitBetween : "targetLatency:" + targetLatency) +
+                ", batchSize:" + batchSize + ", batchBytes:" + batchBytes + ", concurrency:" + concurrency +
+                ", readers:" + readers + ", resume:" + resume);
         out.println("Note: Import wont create any jobs or listeners!");
         Integer choose = in.choose(ListUtil.asList("no", "yes"), "yes", null);
         if (choose == 0) {
             return 0;
         }
 
+        journal = new ImportJournal(getContext().getHiddenPipeforceFolder());
+        if (resume) {
+            journal.load();
+        } else if (journal.exists()) {
+            out.println("Previous import was interrupted. Starting a new one. Use --resume to continue it.");
+            journal.delete();
+        }
+
+        srcHome = PathUtil.path(context.getPropertiesHomeFolder());
+        deployWithExtension = config.getWorkspaceConfig().isDeployWithExtension();
+
         DateTimeUtil.Timer timer = DateTimeUtil.startTimer();
-        processFilesInBatches(folderPath,
-                batchSize, 0, overallFilesCounter, waitBetween, existStrategy, recurse, uuidLocation,
-                removeUuidField);
+        readerExecutor = Executors.newFixedThreadPool(readers);
+        senderExecutor = Executors.newFixedThreadPool(concurrency);
+
+        try {
+            processFilesInBatches(folderPath,
+                    batchSize, batchBytes, 0, overallFilesCounter, waitBetween, existStrategy, recurse, uuidLocation,
+                    removeUuidField);
+
+            while (inFlight > 0) {
+                collectBatch(true);
+            }
+        } finally {
+            readerExecutor.shutdownNow();
+            senderExecutor.shutdownNow();
+        }
+
         timer.stop();
 
-        out.println("Done. Duration: " + timer.getTimeElapsed() + ". Overall files: " + overallFilesCounter + ".");
+        out.println("Done. Duration: " + timer.getTimeElapsed() + ". Overall files: " + overallFilesCounter +
+                ". Imported: " + importedCounter + "." +
+                (resume ? " Skipped since imported before: " + skippedCounter + "." : ""));
+
+        if (!failedBatches.isEmpty()) {
+
+            failedBatches.sort(Comparator.comparingInt(batch -> batch.number));
+            out.println("Import stopped since " + failedBatches.size() + " batch(es) failed:");
+            for (ImportBatch batch : failedBatches) {
+                out.println("  " + batch + ": " + batch.error.getMessage());
+            }
+
+            out.println("Import not finished. Use --resume to continue.");
+            return -1;
+        }
 
+        journal.delete();
         return 0;
     }
 
-    public long processFilesInBatches(Path folderPath, int batchSize, long alreadyProcessed, long overallFiles,
-                                      int waitBetween, String existStrategy, boolean recurse, String uuidLocation,
-                                      boolean removeUuidField) throws IOException {
+    /**
+     * Walks the given folder and cuts its files into batches. A batch is cut at whatever comes first: batchSize
+     * files or maxBatchBytes as sum of the file sizes. A single file bigger than maxBatchBytes is sent alone.
+     * The files are only checked here, reading and sending is done by the pipeline, see
+     * {@link #submitBatch(ImportBatch, long, String, String, boolean)}.
+     * On resume, files in the journal are skipped. The files of a folder done completely are skipped in case none
+     * of them has been added, removed or changed since then. Otherwise they are all imported again, since the
+     * journal doesn't keep the single files of done folders.
+     *
+     * @return The number of files processed so far, including the files of this folder.
+     */
+    public long processFilesInBatches(Path folderPath, int batchSize, long maxBatchBytes, long alreadyProcessed,
+                                      long overallFiles, int waitBetween, String existStrategy, boolean recurse,
+                                      String uuidLocation, boolean removeUuidField) throws IOException {
 
         List<Path> foldersFound = new ArrayList<>();
+        ImportFolder folder = new ImportFolder(folderPath.toFile());
+
+        boolean folderDone = false;
+        if (journal.hasFolder(folder.folder)) {
+            long[] stats = getFileStats(folderPath);
+            folderDone = journal.isFolderDone(folder.folder, stats[0], stats[1], stats[2]);
+        }
 
         try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(folderPath)) {
-            List<File> batch = new ArrayList<>(batchSize);
+            ImportBatch batch = new ImportBatch(folder, alreadyProcessed + 1);
 
             for (Path path : directoryStream) {
+
+                if (isAborted()) {
+                    break;
+                }
+
                 if (Files.isRegularFile(path)) {  // Check if it's a file
-                    batch.add(path.toFile());
 
-                    // When the batch size is reached, process the batch
-                    if (batch.size() == batchSize) {
-                        alreadyProcessed = importProperties(batch, alreadyProcessed, overallFiles, existStrategy,
-                                uuidLocation, removeUuidField);
-                        batch.clear(); // Clear the batch for the next set
+                    if (folderDone) {
+                        skippedCounter++;
+                        continue;
+                    }
+
+                    long size = Files.size(path);
+                    long lastModified = Files.getLastModifiedTime(path).toMillis();
+                    folder.addStats(size, lastModified);
+
+                    if (journal.isDone(path.toFile(), size, lastModified)) {
+                        skippedCounter++;
+                        continue;
+                    }
+
+                    // When the batch size or bytes would be exceeded, process the batch
+                    if (!batch.files.isEmpty() &&
+                            (batch.files.size() >= batchSize || batch.bytes + size > maxBatchBytes)) {
 
-                        out.println("Imported " + alreadyProcessed + " files.");
+                        alreadyProcessed = alreadyProcessed + batch.files.size();
+                        submitBatch(batch, overallFiles, existStrategy, uuidLocation, removeUuidField);
+                        batch = new ImportBatch(folder, alreadyProcessed + 1); // Start the next set
 
                         if (waitBetween > 0) {
                             ThreadUtil.sleep(waitBetween); // Do not over-attack server
                         }
                     }
+
+                    batch.add(path.toFile(), toPropertyPath(path.toFile()), size, lastModified);
                 } else if (Files.isDirectory(path)) {
                     foldersFound.add(path);
                 }
             }
 
             // Process any remaining files in the last batch
-            if (!batch.isEmpty()) {
-                alreadyProcessed = importProperties(batch, alreadyProcessed, overallFiles, existStrategy,
-                        uuidLocation, removeUuidField);
+            if (!batch.files.isEmpty() && !isAborted()) {
+                alreadyProcessed = alreadyProcessed + batch.files.size();
+                submitBatch(batch, overallFiles, existStrategy, uuidLocation, removeUuidField);
             }
         }
 
+        if (!folderDone && !isAborted()) {
+            folder.listed = true;
+            completeFolder(folder);
+        }
+
         // Process sub folders recursively
         if (recurse) {
             for (Path path : foldersFound) {
-                alreadyProcessed = processFilesInBatches(path, batchSize, alreadyProcessed, overallFiles,
-                        waitBetween, existStrategy, recurse, uuidLocation, removeUuidField);
+
+                if (isAborted()) {
+                    break;
+                }
+
+                alreadyProcessed = processFilesInBatches(path, batchSize, maxBatchBytes, alreadyProcessed,
+                        overallFiles, waitBetween, existStrategy, recurse, uuidLocation, removeUuidField);
             }
         }
 
         return alreadyProcessed;
     }
 
-    public long importProperties(List<File> files, long alreadyProcessed, long overallFiles, String existStrategy,
-                                 String uuidLocation, boolean removeUuidField) throws IOException {
+    /**
+     * @param folderPath
+     * @return The number of files in the given folder, the sum of their sizes and the sum of their last modified.
+     * @throws IOException
+     */
+    private long[] getFileStats(Path folderPath) throws IOException {
 
-        MimeTypeService mimeTypeService = getContext().getMimeTypeService();
+        long[] stats = new long[3];
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(folderPath)) {
 
-        String srcHome = PathUtil.path(context.getPropertiesHomeFolder());
+            for (Path path : directoryStream) {
 
-        boolean deployWithExtension = config.getWorkspaceConfig().isDeployWithExtension();
+                if (Files.isRegularFile(path)) {
+                    stats[0]++;
+                    stats[1] = stats[1] + Files.size(path);
+                    stats[2] = stats[2] + Files.getLastModifiedTime(path).toMillis();
+                }
+            }
+        }
 
-        List<Map> propertiesList = new ArrayList<>();
+        return stats;
+    }
 
-        for (File file : files) {
+    private String toPropertyPath(File file) {
 
-            if (!FileUtil.isRegularFile(file)) {
-                continue;
-            }
+        String propertyPath = file.getAbsolutePath().substring(srcHome.length());
+        propertyPath = propertyPath.substring(1);
+
+        // Replace any backslash to forward slash \ -> / (for windows)
+        propertyPath = propertyPath.replaceAll("\\\\", "/");
+
+        if (!deployWithExtension) {
+            propertyPath = PathUtil.removeExtensions(propertyPath);
+        }
+
+        return propertyPath;
+    }
+
+    /**
+     * Submits the given batch to the import pipeline: One of the {@link #readers} threads reads and encodes its
+     * files into the import body, then one of the {@link #concurrency} sender threads sends it. So the walker, the
+     * file reading and the network wait run at the same time. Finished batches are queued in {@link #doneBatches}.
+     * <p>
+     * Each batch in the pipeline holds a temp file, so the walker waits here as long as readers + 2 * concurrency
+     * batches are in the pipeline: The ones being encoded, the ones in flight and the same number queued for
+     * sending.
+     *
+     * @param batch
+     * @param overallFiles
+     * @param existStrategy
+     * @param uuidLocation
+     * @param removeUuidField
+     */
+    private void submitBatch(ImportBatch batch, long overallFiles, String existStrategy, String uuidLocation,
+                             boolean removeUuidField) {
+
+        while (inFlight >= readers + 2 * concurrency) {
+            collectBatch(true);
+        }
+
+        batch.number = ++batchCounter;
+        batch.folder.pendingBatches++;
+
+        CompletableFuture
+                .runAsync(() -> encodeBatch(batch, overallFiles, uuidLocation, removeUuidField), readerExecutor)
+                .thenRunAsync(() -> {
+                    if (batch.body.size() > 0) {
+                        sendBatch(batch, existStrategy);
+                    }
+                }, senderExecutor)
+                .whenComplete((result, e) -> {
+
+                    if (e != null) {
+                        batch.error = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                    }
+
+                    if (batch.body != null) {
+                        batch.body.close();
+                    }
+
+                    doneBatches.add(batch);
+                });
+
+        inFlight++;
+
+        // Report the batches finished meanwhile
+        while (inFlight > 0 && collectBatch(false)) {
+            // Collect next
+        }
+    }
+
+    /**
+     * Reads the files of the given batch into its import body. Called by the reader threads, so the progress is
+     * added to the messages of the batch and printed by the walker thread.
+     */
+    private void encodeBatch(ImportBatch batch, long overallFiles, String uuidLocation, boolean removeUuidField) {
+
+        MimeTypeCliService mimeTypeService = getContext().getMimeTypeService();
+
+        // Property values are streamed into the body, so memory doesn't depend on the file sizes
+        batch.body = new PropertyImportBody();
 
-            String propertyPath = file.getAbsolutePath().substring(srcHome.length());
-            propertyPath = propertyPath.substring(1);
+        for (int i = 0; i < batch.files.size(); i++) {
 
-            // Replace any backslash to forward slash \ -> / (for windows)
-            propertyPath = propertyPath.replaceAll("\\\\", "/");
+            File file = batch.files.get(i);
+            String propertyPath = batch.propertyPaths.get(i);
 
-            if (!deployWithExtension) {
-                propertyPath = PathUtil.removeExtensions(propertyPath);
+            if (!FileUtil.isRegularFile(file)) {
+                batch.skipped.set(i);
+                continue;
             }
 
             String fileName = file.getName();
             String propertyType = mimeTypeService.detectMimeType(fileName);
+            boolean binary = mimeTypeService.isBinary(propertyType);
 
-            String propertyValue;
             ContentType type;
-
-            if (mimeTypeService.isBinary(propertyType)) {
+            if (binary) {
                 type = new ContentType(propertyType + ";encoding=base64");
-                propertyValue = EncodeUtil.toBase64(file);
             } else {
                 type = new ContentType(propertyType);
-                propertyValue = StringUtil.fromFile(file);
             }
 
             String uuid = null;
@@ -239,72 +520,382 @@ public class ImportCliCommand extends BaseCliCommand {
                 }
             }
 
+            String propertyValue = null;
+
             if (propertyType.startsWith("application/json")) {
 
-                JsonNode node = JsonUtil.jsonStringToJsonNode(propertyValue);
+                boolean uuidInField = (uuidLocation != null) && uuidLocation.startsWith("field");
+
+                // Only load the JSON into memory in case it must be read or modified
+                if (uuidInField || removeUuidField) {
+
+                    JsonNode node;
+                    try {
+                        node = JsonUtil.jsonStringToJsonNode(StringUtil.fromFile(file));
+                    } catch (RuntimeException e) {
+                        throw new CliException("Invalid JSON in file " + file + ": " + e.getMessage(), e);
+                    }
 
-                // uuidLocation:field or uuidLocation:field:my_field
-                if ((uuidLocation != null) && uuidLocation.startsWith("field")) {
+                    // uuidLocation:field or uuidLocation:field:my_field
+                    if (uuidInField) {
 
-                    String fieldName = "uuid";
-                    String[] split = uuidLocation.split(":");
+                        String fieldName = "uuid";
+                        String[] split = uuidLocation.split(":");
 
-                    if (split.length == 2) {
-                        fieldName = split[1];
+                        if (split.length == 2) {
+                            fieldName = split[1];
+                        }
+
+                        uuid = node.get(fieldName).textValue();
                     }
 
-                    uuid = node.get(fieldName).textValue();
+                    if (removeUuidField) {
+
+                        ObjectNode objectNode = (ObjectNode) node;
+                        objectNode.remove("uuid");
+                        propertyValue = objectNode.toPrettyString();
+                    }
+                } else {
+                    validateJson(file);
                 }
 
                 if (uuid == null) {
                     uuid = UUID.randomUUID().toString(); // Create a new UUID since uuidLocation was not given
                 }
+            }
+
+            if (propertyValue != null) {
+                batch.body.add(propertyPath, type.toString(), uuid, propertyValue);
+            } else {
+                batch.body.add(propertyPath, type.toString(), uuid, file, binary);
+            }
+
+            batch.messages.add("Importing " + (batch.firstIndex + i) + "/" + overallFiles + ": " + propertyPath);
+        }
+    }
+
+    /**
+     * Checks whether the given file contains valid JSON, so an invalid file is reported by its name instead of
+     * failing the whole batch on the server. Uses a streaming parser, so the file is not loaded into memory.
+     *
+     * @param file
+     */
+    private void validateJson(File file) {
+
+        try (JsonParser parser = JSON_FACTORY.createParser(file)) {
+            while (parser.nextToken() != null) {
+                // Only parse
+            }
+        } catch (IOException e) {
+            throw new CliException("Invalid JSON in file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Collects a batch finished by the pipeline. Counters and the journal are updated only here, in the walker
+     * thread.
+     *
+     * @param wait Wait for the next batch to finish?
+     * @return False in case wait is false and no batch has been finished yet.
+     */
+    private boolean collectBatch(boolean wait) {
+
+        ImportBatch batch;
+
+        try {
+            batch = wait ? doneBatches.take() : doneBatches.poll();
+            if (batch == null) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CliException("Import has been interrupted: " + e.getMessage(), e);
+        }
 
-                if (removeUuidField) {
+        inFlight--;
 
-                    ObjectNode objectNode = (ObjectNode) node;
-                    objectNode.remove("uuid");
-                    propertyValue = objectNode.toPrettyString();
+        for (String message : batch.messages) {
+            out.println(message);
+        }
+
+        if (batch.error != null) {
+            failedBatches.add(batch);
+            batch.folder.failed = true;
+            out.println("Import of " + batch + " failed: " + batch.error.getMessage());
+            return true;
+        }
+
+        importedCounter += batch.body.size();
+
+        for (int i = 0; i < batch.files.size(); i++) {
+
+            if (batch.skipped.get(i)) {
+                continue; // Not sent -> Not imported
+            }
+
+            long[] sizeAndLastModified = batch.sizeAndLastModified.get(i);
+            journal.add(batch.files.get(i), sizeAndLastModified[0], sizeAndLastModified[1]);
+        }
+
+        journal.flush();
+        batch.folder.pendingBatches--;
+        completeFolder(batch.folder);
+        out.println("Imported " + importedCounter + " files." + getRateInfo());
+        return true;
+    }
+
+    /**
+     * Marks the given folder as done in the journal in case it has been listed completely and all of its batches
+     * were imported successfully.
+     *
+     * @param folder
+     */
+    private void completeFolder(ImportFolder folder) {
+
+        if (folder.listed && folder.pendingBatches == 0 && !folder.failed) {
+            journal.addFolder(folder.folder, folder.files, folder.bytes, folder.lastModifiedSum);
+            journal.flush();
+        }
+    }
+
+    /**
+     * Sets the number of threads reading and encoding the files of the batches.
+     *
+     * @param readers Must be between 1 and {@link #MAX_READERS}.
+     */
+    public void setReaders(int readers) {
+
+        if (readers < 1 || readers > MAX_READERS) {
+            throw new CliException("Switch " + SWITCH_READERS + " must be between 1 and " + MAX_READERS + ": " +
+                    readers);
+        }
+
+        this.readers = readers;
+    }
+
+    /**
+     * @return True in case a batch has failed, so no more batches will be built.
+     */
+    private boolean isAborted() {
+        return !failedBatches.isEmpty();
+    }
+
+    /**
+     * Sets the number of batches to keep in flight at the same time.
+     *
+     * @param concurrency Must be between 1 and {@link #MAX_CONCURRENCY}.
+     */
+    public void setConcurrency(int concurrency) {
+
+        if (concurrency < 1 || concurrency > MAX_CONCURRENCY) {
+            throw new CliException("Switch " + SWITCH_CONCURRENCY + " must be between 1 and " + MAX_CONCURRENCY +
+                    ": " + concurrency);
+        }
+
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sends the given batch to the server, paced by the rate limiter. In case the server is overloaded, the rate
+     * is lowered and the batch is sent again, up to {@link #MAX_ATTEMPTS} times. Called by the sender threads.
+     *
+     * @param batch
+     * @param existStrategy
+     */
+    private void sendBatch(ImportBatch batch, String existStrategy) {
+
+        for (int attempt = 1; ; attempt++) {
+
+            if (rateLimiter != null) {
+                try {
+                    rateLimiter.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CliException("Import has been interrupted: " + e.getMessage(), e);
                 }
             }
 
-            Map propertyParams = new HashMap();
-            propertyParams.put(FIELD_PATH, propertyPath);
-            propertyParams.put(FIELD_TYPE, type.toString());
-            propertyParams.put(FIELD_VALUE, propertyValue);
+            long start = System.nanoTime();
+
+            try {
+                getContext().getResolver().command(
+                        new PropertyImportParams()
+                                .strategy(existStrategy)
+                                .setBody(APPLICATION_JSON.toString(), batch.body.toResource()));
+            } catch (RuntimeException e) {
+
+                if (rateLimiter == null || attempt >= MAX_ATTEMPTS || !AdaptiveRateLimiter.isOverload(e)) {
+                    throw e;
+                }
 
-            if (uuid != null) {
-                propertyParams.put(FIELD_UUID, uuid);
+                rateLimiter.onOverload();
+                batch.messages.add("Server overloaded: " + e.getMessage() + ". Retry " + attempt + "/" +
+                        (MAX_ATTEMPTS - 1) + "." + getRateInfo());
+                continue;
             }
 
-            propertiesList.add(propertyParams);
+            if (rateLimiter != null) {
+                rateLimiter.onResponse(System.nanoTime() - start);
+            }
 
-            alreadyProcessed = alreadyProcessed + 1;
-            out.println("Importing " + alreadyProcessed + "/" + overallFiles + ": " + propertyPath);
+            return;
         }
+    }
+
+    public long getImportedCounter() {
+        return importedCounter;
+    }
+
+    /**
+     * @return The number of batches built by the last import.
+     */
+    public int getBatchCounter() {
+        return batchCounter;
+    }
+
+    private String getRateInfo() {
 
-        if (propertiesList.size() > 0) {
-            getContext().getResolver().command(
-                    new PropertyImportParams()
-                            .strategy(existStrategy)
-                            .setBody(propertiesList));
+        if (rateLimiter == null) {
+            return "";
         }
 
-        return alreadyProcessed;
+        return String.format(" Rate: %.1f batches/s, latency: %d ms.", rateLimiter.getRate(),
+                rateLimiter.getLatencyMillis());
     }
 
     public String getUsageHelp() {
 
         return "pi import [-existStrategy:update|skip|error] [-uuidLocation:filename|field[:name]] [-removeUuidField:true] " +
-                "[-batchSize:50] [-waitBetween:50] <PATH>\n" +
+                "[-batchSize:50] [-batchBytes:" + DEFAULT_BATCH_BYTES + "] [-concurrency:1-" + MAX_CONCURRENCY + "] " +
+                "[-readers:1-" + MAX_READERS + "] [-targetLatency:1000] [-waitBetween:50] [--resume] <PATH>\n" +
                 "   Imports all files at given path as properties, recursively.\n" +
                 "   Default exist strategy is update.\n" +
                 "   This command is for batch import of huge amount of files.\n" +
                 "   At server side no events will be fired on import = no jobs or listeners will be created.\n" +
+                "   The rate of batches adapts to the server: It is raised as long as the server responds\n" +
+                "   faster than targetLatency (millis) and lowered on slow responses or in case the server is\n" +
+                "   overloaded. Batches rejected with 429 or 503 or a refused connection are sent again.\n" +
+                "   A given waitBetween (millis) uses a fixed wait between batches instead.\n" +
+                "   A batch is cut at whatever comes first: batchSize files or batchBytes as sum of the file sizes.\n" +
+                "   A single file bigger than batchBytes is sent alone.\n" +
+                "   The files are read and encoded by readers threads, default is the number of CPU cores,\n" +
+                "   while concurrency sets the number of batches sent at the same time. Default is 1.\n" +
+                "   In case a batch fails, no more batches are sent and the files of the failed batches are listed.\n" +
+                "   Imported files are recorded in .pipeforce/" + ImportJournal.JOURNAL_FILE_NAME + ".\n" +
+                "   --resume continues an interrupted import and skips all files imported before, as long as\n" +
+                "   they didn't change. In case a file was added to, removed from or changed in a folder imported\n" +
+                "   completely before, all files of this folder are imported again.\n" +
                 "   <PATH> is optional and must point to files inside the properties folder.\n" +
                 "   Examples: \n" +
                 "     pi import - Imports all files inside properties folder recursively.\n" +
                 "     pi import -existStrategy:skip myapp - Imports all app files, skips existing files.\n" +
                 "     pi import properties/global/app/myapp/data/ - Imports all data files.";
     }
+
+    /**
+     * A batch of files sent to the server with a single import request.
+     */
+    private static class ImportBatch {
+
+        private final ImportFolder folder;
+
+        /**
+         * The number of the first file of this batch in the overall import, starting with 1.
+         */
+        private final long firstIndex;
+
+        private int number;
+
+        private final List<File> files = new ArrayList<>();
+
+        private final List<String> propertyPaths = new ArrayList<>();
+
+        /**
+         * The size and last modified of each file when it was added, so the journal records the imported state.
+         */
+        private final List<long[]> sizeAndLastModified = new ArrayList<>();
+
+        /**
+         * The sum of the file sizes.
+         */
+        private long bytes;
+
+        /**
+         * The indexes of the files which were not added to the body, since they were no regular files anymore when
+         * reading them. Set by the reader thread.
+         */
+        private final BitSet skipped = new BitSet();
+
+        /**
+         * Set by the reader thread, which encodes the files.
+         */
+        private volatile PropertyImportBody body;
+
+        private volatile Throwable error;
+
+        /**
+         * The output of the reader and sender threads, printed by the walker thread since the output service is
+         * not thread safe. The stages of a batch run one after another, so no synchronization is needed.
+         */
+        private final List<String> messages = new ArrayList<>();
+
+        private ImportBatch(ImportFolder folder, long firstIndex) {
+            this.folder = folder;
+            this.firstIndex = firstIndex;
+        }
+
+        private void add(File file, String propertyPath, long size, long lastModified) {
+
+            files.add(file);
+            propertyPaths.add(propertyPath);
+            sizeAndLastModified.add(new long[]{size, lastModified});
+            bytes = bytes + size;
+        }
+
+        @Override
+        public String toString() {
+            return "batch " + number + " (files " + firstIndex + "-" + (firstIndex + files.size() - 1) + ": " +
+                    propertyPaths.get(0) + " .. " + propertyPaths.get(propertyPaths.size() - 1) + ")";
+        }
+    }
+
+    /**
+     * The state of a folder while its files are imported.
+     */
+    private static class ImportFolder {
+
+        private final File folder;
+
+        /**
+         * The number of batches of this folder submitted but not yet imported.
+         */
+        private int pendingBatches;
+
+        /**
+         * True as soon as all files of this folder have been added to batches.
+         */
+        private boolean listed;
+
+        private boolean failed;
+
+        /**
+         * The number of files found in this folder, the sum of their sizes and of their last modified. Recorded in
+         * the journal, in order to notice changes of a done folder on resume.
+         */
+        private long files;
+
+        private long bytes;
+
+        private long lastModifiedSum;
+
+        private ImportFolder(File folder) {
+            this.folder = folder;
+        }
+
+        private void addStats(long size, long lastModified) {
+            files++;
+            bytes = bytes + size;
+            lastModifiedSum = lastModifiedSum + lastModified;
+        }
+    }
 }
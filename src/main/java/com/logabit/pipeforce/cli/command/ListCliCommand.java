@@ -1,17 +1,27 @@
 package com.logabit.pipeforce.cli.command;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logabit.pipeforce.cli.CliException;
 import com.logabit.pipeforce.cli.CliPathArg;
 import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.PropertyPage;
+import com.logabit.pipeforce.cli.PropertyPager;
+import com.logabit.pipeforce.cli.service.OutputCliService;
+import com.logabit.pipeforce.cli.service.RemoteIndex;
 import com.logabit.pipeforce.common.command.stub.PropertyListParams;
 //import com.logabit.pipeforce.common.net.Request;
 import com.logabit.pipeforce.common.util.PathUtil;
+import com.logabit.pipeforce.common.util.StringUtil;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
-import static com.logabit.pipeforce.common.property.IProperty.FIELD_PATH;
+import static com.logabit.pipeforce.common.util.VersionUtil.givenNewerOrEqualThanRequired;
 
 /**
  * Lists all property keys matching given property path pattern.
@@ -21,30 +31,80 @@ import static com.logabit.pipeforce.common.property.IProperty.FIELD_PATH;
  */
 public class ListCliCommand extends BaseCliCommand {
 
+    public static final String SWITCH_CACHED = "cached";
+
+    public static final String SWITCH_OFFLINE = "offline";
+
+    /**
+     * A cached list refreshes the remote index in case its last refresh is older.
+     */
+    public static final long INDEX_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * A refresh of the remote index requests all keys in case its last full refresh is older. Otherwise only the
+     * keys updated since then. Only a full refresh notices keys deleted by others.
+     */
+    public static final long INDEX_FULL_REFRESH_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The pattern of all keys in the remote index.
+     */
+    private static final String INDEX_PATTERN = "global/**";
+
+    /**
+     * Paging using offset is supported since this server version.
+     */
+    private static final int[] OFFSET_REQUIRED_VERSION = new int[]{10, 0, 2, 0};
+
+    private static final ObjectMapper NDJSON_MAPPER = new ObjectMapper();
+
+    private PropertyPager pager = new PropertyPager();
+
+    private boolean fieldsIgnored = false;
+
     @Override
     public int call(CommandArgs args) throws Exception {
 
-        if (args.getLength() != 1) {
+        if (args.getLength() - args.getSwitches().size() != 1) {
             out.println("USAGE: " + getUsageHelp());
             return -1;
         }
 
+        // Fixed number of properties per page instead of tuning it automatically
+        String pageSizeString = args.getSwitch(PropertyPager.SWITCH_PAGE_SIZE);
+        if (!StringUtil.isEmpty(pageSizeString)) {
+            setPageSize(Integer.parseInt(pageSizeString));
+        }
+
         // pi list PATH
         CliPathArg pathArg = getContext().createPathArg(args.getOptionKeyAt(0));
         String keyPrefix = PathUtil.path("/pipeforce", getContext().getCurrentInstance().getNamespace());
+        String pattern = pathArg.getRemotePattern();
+
+        String format = out.getOutputFormat();
+        boolean ndjson = StringUtil.isEqual(format, OutputCliService.OUTPUT_NDJSON);
+        boolean streaming = ndjson || StringUtil.isEqual(format, OutputCliService.OUTPUT_PLAIN);
+
+        boolean offline = StringUtil.isEqual(args.getSwitch(SWITCH_OFFLINE), "true");
+        if (offline || StringUtil.isEqual(args.getSwitch(SWITCH_CACHED), "true")) {
+            listCached(pattern, keyPrefix, offline, streaming, ndjson);
+            return 0;
+        }
+
+        if (streaming) {
+
+            // Each page is printed as soon as it has been received. No progress, since it would mix up the output
+            fetch(pattern, 0, page -> out.printLines(toLines(page, keyPrefix, ndjson)));
+            return 0;
+        }
 
         out.showProgress("");
         try {
-            ArrayNode list = getContext().getResolver().command(
-                    new PropertyListParams().pattern(pathArg.getRemotePattern()),
-                    ArrayNode.class
-            );
-
             List<String> keys = new ArrayList<>();
-            for (JsonNode node : list) {
-                keys.add(node.get(FIELD_PATH).textValue().substring(keyPrefix.length()));
-            }
-
+            fetch(pattern, 0, page -> {
+                keys.addAll(toLines(page, keyPrefix, false));
+                return true;
+            });
             out.printResult(keys);
         } finally {
             out.stopProgress();
@@ -52,14 +112,225 @@ public class ListCliCommand extends BaseCliCommand {
         return 0;
     }
 
+    /**
+     * Lists the keys matching the given pattern from the local remote index instead of asking the server.
+     *
+     * @param pattern
+     * @param keyPrefix
+     * @param offline   If true, the index is used as it is. Otherwise it is refreshed if it is outdated.
+     * @param streaming If true, the keys are printed line by line. Otherwise as YAML.
+     * @param ndjson    If true, each line is a JSON object with the metadata of a property. Otherwise its key.
+     */
+    private void listCached(String pattern, String keyPrefix, boolean offline, boolean streaming, boolean ndjson) {
+
+        RemoteIndex index = new RemoteIndex(getContext().getHiddenPipeforceFolder(),
+                getContext().getCurrentInstance().getHost(), getContext().getCurrentInstance().getNamespace());
+
+        if (offline) {
+            if (!index.exists()) {
+                throw new CliException("No remote index found. Use --" + SWITCH_CACHED + ":true once to create it.");
+            }
+        } else if (streaming) {
+            refreshIndex(index, keyPrefix);
+        } else {
+            out.showProgress("");
+            try {
+                refreshIndex(index, keyPrefix);
+            } finally {
+                out.stopProgress();
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (RemoteIndex.Entry entry : index.match(pattern)) {
+
+            String key = "/" + entry.getKey();
+            if (!ndjson) {
+                lines.add(key);
+                continue;
+            }
+
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("key", key);
+            line.put("type", entry.getType());
+            line.put("updated", entry.getUpdated());
+            lines.add(toJson(line));
+        }
+
+        if (streaming) {
+            out.printLines(lines);
+        } else {
+            out.printResult(lines);
+        }
+    }
+
+    /**
+     * Refreshes the given remote index in case its last refresh is older than {@link #INDEX_TTL_MILLIS}.
+     * Only the keys updated since the last refresh are requested, unless the last full refresh is older than
+     * {@link #INDEX_FULL_REFRESH_MILLIS}.
+     *
+     * @param index
+     * @param keyPrefix
+     */
+    private void refreshIndex(RemoteIndex index, String keyPrefix) {
+
+        long now = System.currentTimeMillis();
+        if (index.exists() && now - index.getRefreshed() < INDEX_TTL_MILLIS) {
+            return;
+        }
+
+        boolean full = !index.exists() || index.getHighWaterMark() == 0 ||
+                now - index.getFullRefreshed() >= INDEX_FULL_REFRESH_MILLIS;
+
+        long updatedSince = 0;
+        if (full) {
+            index.clear();
+        } else {
+            updatedSince = index.getHighWaterMark();
+        }
+
+        fetch(INDEX_PATTERN, updatedSince, page -> {
+
+            for (PropertyPage.Property property : page.getProperties()) {
+                String key = property.getPath().substring(keyPrefix.length() + 1);
+                index.put(key, property.getType(), Math.max(property.getCreated(), property.getUpdated()));
+            }
+
+            return true;
+        });
+
+        index.setRefreshed(now, full);
+        index.save();
+    }
+
+    /**
+     * Fetches the metadata of all properties matching the given pattern page by page.
+     *
+     * @param pattern
+     * @param updatedSince If greater than 0, only properties updated (or created) since then are fetched.
+     * @param consumer     Returns false in case no more pages are needed.
+     */
+    private void fetch(String pattern, long updatedSince, Predicate<PropertyPage> consumer) {
+
+        if (!givenNewerOrEqualThanRequired(getContext().getServerVersion(), OFFSET_REQUIRED_VERSION)) {
+
+            // Server version < 10.0.2 -> No offset is supported -> All properties are returned at once
+            PropertyListParams params = new PropertyListParams().pattern(pattern);
+            if (updatedSince > 0) {
+                params.getParamsMap().put(GetCliCommand.PARAM_UPDATED_SINCE, updatedSince);
+            }
+
+            try (PropertyPage page = getContext().getResolver().command(params, PropertyPage.class)) {
+
+                if (page != null) {
+                    consumer.test(page);
+                }
+            }
+
+            return;
+        }
+
+        pager.fetchWhile((offset, limit) -> {
+
+            PropertyListParams params = new PropertyListParams().pattern(pattern).offset(offset).limit(limit);
+            params.getParamsMap().put(PropertyPage.PARAM_FIELDS, PropertyPage.FIELDS_METADATA);
+            if (updatedSince > 0) {
+                params.getParamsMap().put(GetCliCommand.PARAM_UPDATED_SINCE, updatedSince);
+            }
+
+            return getContext().getResolver().command(params, PropertyPage.class);
+
+        }, page -> {
+            warnIfFieldsIgnored(page);
+            return consumer.test(page);
+        });
+    }
+
+    /**
+     * Prints a warning once in case the given page contains values although only the metadata was requested.
+     * Nothing is printed in case of streaming output, since it would mix up the output.
+     *
+     * @param page
+     */
+    private void warnIfFieldsIgnored(PropertyPage page) {
+
+        if (fieldsIgnored || !page.hasValues()) {
+            return;
+        }
+
+        fieldsIgnored = true;
+        String format = out.getOutputFormat();
+        if (!StringUtil.isEqual(format, OutputCliService.OUTPUT_NDJSON) &&
+                !StringUtil.isEqual(format, OutputCliService.OUTPUT_PLAIN)) {
+            out.println(PropertyPage.FIELDS_IGNORED_WARNING);
+        }
+    }
+
+    /**
+     * Sets a fixed number of properties to fetch per request. By default, the page size is tuned automatically.
+     *
+     * @param pageSize Must be between 1 and {@link PropertyPager#MAX_PAGE_SIZE}.
+     */
+    public void setPageSize(int pageSize) {
+        this.pager = new PropertyPager(pageSize);
+    }
+
+    /**
+     * @param page
+     * @param keyPrefix
+     * @param ndjson    If true, each line is a JSON object with the metadata of a property. Otherwise its key.
+     * @return A line per property of the given page.
+     */
+    private List<String> toLines(PropertyPage page, String keyPrefix, boolean ndjson) {
+
+        List<String> lines = new ArrayList<>(page.size());
+        for (PropertyPage.Property property : page.getProperties()) {
+
+            String key = property.getPath().substring(keyPrefix.length());
+            if (!ndjson) {
+                lines.add(key);
+                continue;
+            }
+
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("key", key);
+            line.put("type", property.getType());
+            line.put("uuid", property.getUuid());
+            line.put("created", property.getCreated());
+            line.put("updated", property.getUpdated() == 0 ? null : property.getUpdated());
+
+            lines.add(toJson(line));
+        }
+
+        return lines;
+    }
+
+    private String toJson(Map<String, Object> line) {
+
+        try {
+            return NDJSON_MAPPER.writeValueAsString(line);
+        } catch (JsonProcessingException e) {
+            throw new CliException("Could not write property " + line.get("key") + ": " + e.getMessage(), e);
+        }
+    }
+
     public String getUsageHelp() {
-        return "pi list <PATH_PATTERN>\n" +
+        return "pi list [-o:plain|ndjson] [--cached:true] [--offline:true] [--pageSize:N] <PATH_PATTERN>\n" +
                 "   Lists all published remote resources of the app.\n" +
+                "   --cached:true matches the pattern against a local index of all remote keys.\n" +
+                "     The index is refreshed if it is older than 5 minutes, using only the keys changed since then.\n" +
+                "   --offline:true uses the local index as it is, without any request to the server.\n" +
+                "     Changes by pi get, publish and delete are added to the index at once,\n" +
+                "     changes by others only by a refresh.\n" +
+                "   -o:plain prints one key per line, -o:ndjson one JSON object per line.\n" +
+                "   Both print each page as soon as it has been received, so they can be piped.\n" +
+                "   --pageSize sets the number of properties per page. By default, it is tuned automatically.\n" +
                 "   Examples:\n" +
                 "     pi list global/app/myapp/** - Lists the content of myapp recursively.\n" +
                 "     pi list global/app/myapp/ - Short-cut of global/app/myapp/**\n" +
                 "     pi list global/app/myapp/pipeline/test - Lists the content of test pipeline\n" +
                 "     pi list global/app/myapp/* - Lists the content of myapp. Not recursively.\n" +
-                "     pi list global/app/*/pipeline/* - Lists all pipelines of all apps.";
+                "     pi list global/app/*/pipeline/* - Lists all pipelines of all apps.\n" +
+                "     pi list -o:plain global/app/*/data/** | wc -l - Counts all data entries of all apps.";
     }
 }
@@ -1,29 +1,50 @@
 package com.logabit.pipeforce.cli.command;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.logabit.pipeforce.cli.CliException;
 import com.logabit.pipeforce.cli.CliPathArg;
 import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.LocalPatternMatcher;
+import com.logabit.pipeforce.cli.LocalPatternMatcher.MatchedFile;
+import com.logabit.pipeforce.cli.PropertyImportBody;
+import com.logabit.pipeforce.cli.PropertyPage;
+import com.logabit.pipeforce.cli.PropertyValueBody;
+import com.logabit.pipeforce.cli.service.MimeTypeCliService;
 import com.logabit.pipeforce.cli.service.PublishCliService;
+import com.logabit.pipeforce.cli.service.PublishProgress;
+import com.logabit.pipeforce.cli.service.PublishStats;
+import com.logabit.pipeforce.cli.service.RemoteIndex;
+import com.logabit.pipeforce.common.command.stub.PropertyImportParams;
+import com.logabit.pipeforce.common.command.stub.PropertyListParams;
 import com.logabit.pipeforce.common.command.stub.PropertySchemaPutParams;
 import com.logabit.pipeforce.common.content.model.ContentType;
-import com.logabit.pipeforce.common.content.service.MimeTypeService;
-import com.logabit.pipeforce.common.util.EncodeUtil;
 import com.logabit.pipeforce.common.util.FileUtil;
 import com.logabit.pipeforce.common.util.JsonUtil;
 import com.logabit.pipeforce.common.util.ListUtil;
 import com.logabit.pipeforce.common.util.PathUtil;
 import com.logabit.pipeforce.common.util.StringUtil;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.logabit.pipeforce.common.property.IProperty.FIELD_PATH;
+import static com.logabit.pipeforce.common.util.VersionUtil.givenNewerOrEqualThanRequired;
+import static org.apache.http.entity.ContentType.APPLICATION_JSON;
+import static org.apache.http.entity.ContentType.TEXT_PLAIN;
 
 
 /**
@@ -34,6 +55,81 @@ import java.util.stream.Collectors;
  */
 public class PublishCliCommand extends BaseCliCommand {
 
+    public static final String SWITCH_PARALLEL = "parallel";
+
+    /**
+     * The max. number of put requests in flight at the same time. Protects the server from being flooded.
+     */
+    public static final int MAX_PARALLEL = 16;
+
+    public static final String SWITCH_BULK = "bulk";
+
+    public static final String SWITCH_DRY_RUN = "dryRun";
+
+    public static final String SWITCH_REMOTE_CHECK = "remoteCheck";
+
+    public static final String SWITCH_RESUME = "resume";
+
+    public static final String SWITCH_STATS = "stats";
+
+    /**
+     * While publishing, the publish registry and progress are saved after this number of published files...
+     */
+    public static final int CHECKPOINT_FILES = 100;
+
+    /**
+     * ...or after this number of milliseconds since the last save, whatever comes first.
+     */
+    public static final long CHECKPOINT_MILLIS = 10000;
+
+    /**
+     * The number of remote properties to fetch per request while planning the publish.
+     */
+    public static final int PLAN_PAGE_SIZE = 100;
+
+    /**
+     * The fields of the remote properties requested while planning the publish. Requests the list without any value.
+     */
+    public static final String PLAN_FIELDS = PropertyPage.FIELDS_METADATA + ",checksum";
+
+    /**
+     * The max. number of files to be sent in a single bulk request.
+     */
+    public static final int BULK_MAX_FILES = 100;
+
+    /**
+     * The max. sum of file sizes in bytes to be sent in a single bulk request.
+     * A single file bigger than this is sent alone.
+     */
+    public static final long BULK_MAX_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Bulk publish uses the property.import command which is available since this server version.
+     */
+    private static final int[] BULK_REQUIRED_VERSION = new int[]{10, 0, 2, 0};
+
+    private int parallel = 1;
+
+    private boolean bulk = false;
+
+    private boolean dryRun = false;
+
+    private boolean remoteCheck = false;
+
+    private boolean resume = false;
+
+    private PublishProgress progress;
+
+    private boolean showStats = false;
+
+    private PublishStats stats = new PublishStats();
+
+    private RemoteIndex remoteIndex;
+
+    private int filesSinceCheckpoint = 0;
+
+    private long lastCheckpoint = 0;
+
     private int filesCounter = 0;
 
     private int publishedCounter = 0;
@@ -42,6 +138,8 @@ public class PublishCliCommand extends BaseCliCommand {
 
     private int createdCounter = 0;
 
+    private int unchangedCounter = 0;
+
     @Override
     public int call(CommandArgs args) throws Exception {
 
@@ -76,51 +174,104 @@ public class PublishCliCommand extends BaseCliCommand {
         String forceString = args.getSwitch("force");
         boolean force = "true".equals(forceString);
 
+        // Number of put requests to keep in flight
+        String parallelString = args.getSwitch(SWITCH_PARALLEL);
+        if (!StringUtil.isEmpty(parallelString)) {
+            setParallel(Integer.parseInt(parallelString));
+        }
+
+        // Send files in batches using the import endpoint?
+        setBulk("true".equals(args.getSwitch(SWITCH_BULK)));
+
+        // Only print what would be published? Can be given as --dryRun or --dryRun:true
+        setDryRun(args.getSwitches().containsKey(SWITCH_DRY_RUN) && !"false".equals(args.getSwitch(SWITCH_DRY_RUN)));
+
+        // Compare with the properties on the server before publishing?
+        setRemoteCheck("true".equals(args.getSwitch(SWITCH_REMOTE_CHECK)));
+
+        // Continue an interrupted publish?
+        setResume("true".equals(args.getSwitch(SWITCH_RESUME)));
+
+        // Print timings and throughput at the end? Can be given as --stats or --stats:true
+        setShowStats(args.getSwitches().containsKey(SWITCH_STATS) && !"false".equals(args.getSwitch(SWITCH_STATS)));
+
         publish(pathArg, force);
-        out.println("See your changes here: " + getContext().getCurrentInstance().getPortalUrl());
+
+        if (!dryRun) {
+            out.println("See your changes here: " + getContext().getCurrentInstance().getPortalUrl());
+        }
 
         return 0;
     }
 
     public void publish(CliPathArg pathArg, boolean force) throws IOException {
 
-        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
-        Resource[] resources = resolver.getResources("file:" + pathArg.getLocalPattern());
-
-        List<File> files = Arrays.stream(resources).map(r -> {
-                    try {
-                        return r.getFile();
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-        ).collect(Collectors.toList());
+        stats = new PublishStats();
+        long scanStart = System.nanoTime();
+        List<MatchedFile> files = new LocalPatternMatcher(pathArg.getLocalPattern()).match();
+        stats.addPhase(PublishStats.PHASE_SCAN, scanStart);
 
-        publish(files.toArray(new File[]{}), force);
+        publish(files, force, pathArg.getRemotePattern());
     }
 
     public void publish(File[] files, boolean force) throws IOException {
 
+        stats = new PublishStats();
+        List<MatchedFile> matchedFiles = new ArrayList<>();
+        for (File file : files) {
+
+            if ((!file.exists()) || file.isDirectory()) {
+                continue;
+            }
+
+            matchedFiles.add(new MatchedFile(file, file.length(), file.lastModified()));
+        }
+
+        publish(matchedFiles, force, null);
+    }
+
+    /**
+     * Publishes the given files.
+     *
+     * @param files
+     * @param force         If true, publishes all files, even if they were not changed.
+     * @param remotePattern The remote pattern covering all files. If not null and remote check is enabled,
+     *                      files unchanged on the server are not published again.
+     * @throws IOException
+     */
+    private void publish(List<MatchedFile> files, boolean force, String remotePattern) throws IOException {
+
         PublishCliService publishService = getContext().getPublishService();
-        MimeTypeService mimeTypeService = getContext().getMimeTypeService();
+        MimeTypeCliService mimeTypeService = getContext().getMimeTypeService();
 
         String srcHome = PathUtil.path(context.getPropertiesHomeFolder());
 
         publishService.load();
+        progress = new PublishProgress(getContext().getHiddenPipeforceFolder());
+        if (resume) {
+            progress.load();
+        } else if (progress.exists() && !dryRun) {
+            out.println("Previous publish was interrupted. Starting a new one. Use --resume:true to continue it.");
+        }
+
         filesCounter = 0;
         publishedCounter = 0;
         updatedCounter = 0;
         createdCounter = 0;
+        unchangedCounter = 0;
         boolean deployWithExtension = config.getWorkspaceConfig().isDeployWithExtension();
 
-        for (File file : files) {
+        List<FileAndKey> toPublish = new ArrayList<>();
+        long scanStart = System.nanoTime();
 
-            if ((!file.exists()) || file.isDirectory() || file.getName().startsWith(".")) {
+        for (MatchedFile matchedFile : files) {
+
+            File file = matchedFile.getFile();
+            if (file.getName().startsWith(".")) {
                 continue;
             }
 
             filesCounter++;
-            String absoluteFilePath = file.getAbsolutePath();
             String propertyKey = file.getAbsolutePath().substring(srcHome.length());
             propertyKey = propertyKey.substring(1);
 
@@ -136,53 +287,648 @@ public class PublishCliCommand extends BaseCliCommand {
                 appConfigValid = validateAppConfig(file);
             }
 
-            long lastModified = Files.getLastModifiedTime(file.toPath()).toMillis();
-            if (!publishService.add(absoluteFilePath, lastModified) && appConfigValid) {
+            if (resume && progress.isDone(file, matchedFile.getSize(), matchedFile.getLastModified())) {
+                continue; // Already published by the interrupted publish
+            }
+
+            if (publishService.isPublished(file, matchedFile.getSize(), matchedFile.getLastModified()) && appConfigValid) {
                 if (!force) {
-                    continue; // Ignore this resource since already in publish registry
+                    continue; // Ignore this resource since its content is already in publish registry
                 }
             }
 
-            String propertyType = mimeTypeService.detectMimeType(file.getName());
+            toPublish.add(new FileAndKey(matchedFile, propertyKey));
+        }
+
+        stats.addPhase(PublishStats.PHASE_SCAN, scanStart);
 
-            out.print("Publishing " + propertyKey + " : ");
+        if (remoteCheck && !force && remotePattern != null && !toPublish.isEmpty()) {
+            long planStart = System.nanoTime();
+            toPublish = planRemote(toPublish, publishService);
+            stats.addPhase(PublishStats.PHASE_PLAN, planStart);
+        }
+
+        if (dryRun) {
+            printPlan(toPublish);
+            printStats();
+            return;
+        }
 
-            String propertyValue;
-            ContentType type;
+        int failedCounter = 0;
 
-            if (mimeTypeService.isBinary(propertyType)) {
-                type = new ContentType(propertyType + ";encoding=base64");
-                propertyValue = EncodeUtil.toBase64(file);
+        if (bulk && !givenNewerOrEqualThanRequired(getContext().getServerVersion(), BULK_REQUIRED_VERSION)) {
+            out.println("Server doesn't support bulk publish. Falling back to single requests.");
+            bulk = false;
+        }
+
+        if (!resume) {
+            progress.delete();
+        }
+
+        // The published keys are added to an existing index of pi list --cached:true
+        remoteIndex = new RemoteIndex(getContext().getHiddenPipeforceFolder(),
+                getContext().getCurrentInstance().getHost(), getContext().getCurrentInstance().getNamespace());
+        if (!remoteIndex.exists()) {
+            remoteIndex = null;
+        }
+
+        filesSinceCheckpoint = 0;
+        lastCheckpoint = System.currentTimeMillis();
+        boolean finished = false;
+        RuntimeException failure = null;
+        long publishStart = System.nanoTime();
+
+        try {
+
+            if (bulk) {
+                failedCounter = publishBulk(toPublish, publishService);
+            } else if (parallel > 1) {
+                failedCounter = publishParallel(toPublish, publishService);
             } else {
-                type = new ContentType(propertyType);
-                propertyValue = StringUtil.fromFile(file);
+
+                for (FileAndKey fileAndKey : toPublish) {
+
+                    out.print("Publishing " + fileAndKey.key + " : ");
+                    fileAndKey.action = putProperty(fileAndKey, mimeTypeService);
+                    onPublished(fileAndKey, publishService);
+                    out.println(fileAndKey.action);
+                }
             }
 
+            finished = true;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
 
-            JsonNode node = getContext().getResolver().command(
-                    new PropertySchemaPutParams().path(propertyKey)
-                            .type(type.toString()).existStrategy("update")
-                            .evalValue("false").value(propertyValue),
-                    JsonNode.class
-            );
+            // Also save what has been published so far in case of an error, without hiding this error
+            try {
+                checkpoint(publishService);
+            } catch (RuntimeException e) {
 
-            String action = node.get("result").textValue();
+                if (failure == null) {
+                    throw e;
+                }
+
+                failure.addSuppressed(e);
+            }
 
-            if (action.equals("create")) {
-                createdCounter++;
+            if (finished && failedCounter == 0) {
+                progress.delete();
             } else {
-                updatedCounter++;
+                out.println("Publish not finished. Use --resume:true to continue.");
             }
 
-            publishedCounter++;
+            stats.addPhase(PublishStats.PHASE_PUBLISH, publishStart);
+            stats.setCounters(filesCounter, publishedCounter, failedCounter);
+            stats.save(getContext().getHiddenPipeforceFolder());
+        }
+
+        if (remoteIndex != null) {
+            remoteIndex.save();
+        }
+
+        out.println("Found " + filesCounter + " files. " + publishedCounter +
+                " published. " + updatedCounter + " updated. " + createdCounter + " created. " +
+                unchangedCounter + " unchanged on server.");
+
+        printStats();
+
+        if (failedCounter > 0) {
+            throw new CliException(failedCounter + " files could not be published. See output above for details.");
+        }
+    }
+
+    private void printStats() {
+
+        if (showStats) {
+            out.println(stats.toText());
+        }
+    }
+
+    /**
+     * Compares the files to be published with their remote properties. Only the metadata of the properties in the
+     * parent folders of these files is requested, never their values. Files with the same content as on the server
+     * are not published again but added to the publish registry, so next time the local check already skips them.
+     * This way, a fresh clone doesn't upload all files again. The planned action of all other files is set to
+     * create or update.
+     *
+     * @param toPublish
+     * @param publishService
+     * @return The files which must be published.
+     */
+    private List<FileAndKey> planRemote(List<FileAndKey> toPublish, PublishCliService publishService) {
+
+        Map<String, FileAndKey> byKey = new HashMap<>();
+        Set<String> folders = new LinkedHashSet<>();
+        for (FileAndKey fileAndKey : toPublish) {
+            fileAndKey.action = "create";
+            byKey.put(fileAndKey.key, fileAndKey);
 
-            out.println(action);
+            int slashIndex = fileAndKey.key.lastIndexOf('/');
+            if (slashIndex > 0) {
+                folders.add(fileAndKey.key.substring(0, slashIndex));
+            }
         }
 
+        int[] serverVersion = getContext().getServerVersion();
+
+        for (String folder : folders) {
+
+            int offset = 0;
+            ArrayNode list;
+
+            do {
+
+                PropertyListParams params = new PropertyListParams()
+                        .pattern(folder + "/*")
+                        .offset(offset)
+                        .limit(PLAN_PAGE_SIZE);
+                params.getParamsMap().put(PropertyPage.PARAM_FIELDS, PLAN_FIELDS);
+
+                try {
+                    list = getContext().getResolver().command(params, ArrayNode.class);
+                } catch (Exception e) {
+                    out.println("Could not compare with server. Publishing all changed files: " + e.getMessage());
+                    return toPublish;
+                }
+
+                if (list == null) {
+                    break;
+                }
+
+                for (JsonNode node : list) {
+
+                    FileAndKey fileAndKey = byKey.get(toPropertyKey(node.get(FIELD_PATH).textValue()));
+                    if (fileAndKey == null) {
+                        continue;
+                    }
+
+                    if (isSameAsRemote(fileAndKey, node, publishService)) {
+                        fileAndKey.action = "unchanged";
+                        fileAndKey.remoteLastModified = getRemoteLastModified(node);
+                    } else {
+                        fileAndKey.action = "update";
+                    }
+                }
+
+                offset = offset + list.size();
+
+                // Server version < 10.0.2 -> No offset is supported
+                if (!(givenNewerOrEqualThanRequired(serverVersion, BULK_REQUIRED_VERSION))) {
+                    break;
+                }
+
+            } while (list.size() > 0);
+        }
+
+        List<FileAndKey> changed = new ArrayList<>();
+        for (FileAndKey fileAndKey : toPublish) {
+
+            if (!"unchanged".equals(fileAndKey.action)) {
+                changed.add(fileAndKey);
+                continue;
+            }
+
+            unchangedCounter++;
+
+            if (!dryRun) {
+                publishService.add(fileAndKey.file, fileAndKey.remoteLastModified);
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Checks whether the given remote property has the same content as the given local file. Uses the checksum of
+     * the property if the server provides one. Otherwise, the content is only the same in case the file was
+     * downloaded from exactly this version of the property and has not been changed locally since then. Timestamps
+     * of local files are never compared with the ones of the server, since they can't tell whether the content is
+     * the same.
+     *
+     * @param fileAndKey
+     * @param node           The metadata of the property, without value.
+     * @param publishService
+     * @return
+     */
+    private boolean isSameAsRemote(FileAndKey fileAndKey, JsonNode node, PublishCliService publishService) {
+
+        JsonNode checksum = node.get("checksum");
+        if (checksum != null && checksum.isTextual()) {
+            return checksum.textValue().equals(PublishCliService.createDigest(fileAndKey.file));
+        }
+
+        Long remoteLastModified = getRemoteLastModified(node);
+        return remoteLastModified != null && publishService.isDownloaded(fileAndKey.file, remoteLastModified);
+    }
+
+    /**
+     * @param node The metadata of a property.
+     * @return The last update or creation of the property or null in case the server didn't send it.
+     */
+    private Long getRemoteLastModified(JsonNode node) {
+
+        long updated = node.path("updated").asLong(0);
+        if (updated == 0) {
+            updated = node.path("created").asLong(0);
+        }
+
+        return (updated > 0) ? updated : null;
+    }
+
+    /**
+     * Prints the planned actions without publishing anything.
+     *
+     * @param toPublish
+     */
+    private void printPlan(List<FileAndKey> toPublish) {
+
+        int create = 0;
+        int update = 0;
+
+        for (FileAndKey fileAndKey : toPublish) {
+
+            String action = fileAndKey.action == null ? "publish" : fileAndKey.action;
+            out.println("Plan " + fileAndKey.key + " : " + action);
+
+            if ("create".equals(action)) {
+                create++;
+            } else if ("update".equals(action)) {
+                update++;
+            }
+        }
+
+        out.println("Dry run. Found " + filesCounter + " files. " + toPublish.size() + " to publish (" + create +
+                " create, " + update + " update). " + unchangedCounter + " unchanged on server. Nothing published.");
+    }
+
+    /**
+     * Maps the remote path to the property key: /pipeforce/NAMESPACE/global/app/... -> global/app/...
+     *
+     * @param path
+     * @return
+     */
+    private String toPropertyKey(String path) {
+
+        int prefixIndex = path.indexOf("global/");
+        if (prefixIndex > 0) {
+            return path.substring(prefixIndex);
+        }
+
+        return path;
+    }
+
+    /**
+     * Publishes the given files using a pool of {@link #parallel} threads, so this number of put requests is
+     * in flight at the same time. The results are collected in the calling thread, so counters and the publish
+     * registry are updated only there and only for files which were successfully published.
+     *
+     * @param toPublish
+     * @param publishService
+     * @return The number of files which could not be published.
+     */
+    private int publishParallel(List<FileAndKey> toPublish, PublishCliService publishService) {
+
+        MimeTypeCliService mimeTypeService = getContext().getMimeTypeService();
+        ExecutorService executor = Executors.newFixedThreadPool(parallel);
+        CompletionService<FileAndKey> completionService = new ExecutorCompletionService<>(executor);
+        int failedCounter = 0;
+
+        try {
+
+            for (FileAndKey fileAndKey : toPublish) {
+                completionService.submit(() -> {
+                    try {
+                        fileAndKey.action = putProperty(fileAndKey, mimeTypeService);
+                    } catch (Exception e) {
+                        fileAndKey.error = e;
+                    }
+                    return fileAndKey;
+                });
+            }
+
+            for (int i = 0; i < toPublish.size(); i++) {
+
+                FileAndKey fileAndKey = completionService.take().get();
+
+                if (fileAndKey.error != null) {
+                    failedCounter++;
+                    out.println("Publishing " + fileAndKey.key + " : failed: " + fileAndKey.error.getMessage());
+                    continue;
+                }
+
+                onPublished(fileAndKey, publishService);
+                out.println("Publishing " + fileAndKey.key + " : " + fileAndKey.action);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CliException("Publish has been interrupted: " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new CliException("Could not publish: " + e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return failedCounter;
+    }
+
+    /**
+     * Publishes the given files in batches using the property.import command, so a single request is sent for
+     * each batch instead of one request per file. See {@link #BULK_MAX_FILES} and {@link #BULK_MAX_BYTES}.
+     * In case the server returns a result per property, it is used to count created and updated properties.
+     * Otherwise each property is counted as updated.
+     *
+     * @param toPublish
+     * @param publishService
+     * @return The number of files which could not be published.
+     */
+    private int publishBulk(List<FileAndKey> toPublish, PublishCliService publishService) {
+
+        MimeTypeCliService mimeTypeService = getContext().getMimeTypeService();
+        int failedCounter = 0;
+
+        for (List<FileAndKey> batch : createBatches(toPublish)) {
+
+            JsonNode result;
+            try (PropertyImportBody body = new PropertyImportBody()) {
+
+                for (FileAndKey fileAndKey : batch) {
+
+                    long mimeStart = System.nanoTime();
+                    String propertyType = mimeTypeService.detectMimeType(fileAndKey.file.getName());
+                    boolean binary = mimeTypeService.isBinary(propertyType);
+                    stats.addMimeDetection(mimeStart);
+
+                    long encodingStart = System.nanoTime();
+                    fileAndKey.type = toContentType(propertyType, binary);
+                    body.add(fileAndKey.key, fileAndKey.type, null, fileAndKey.file, binary);
+                    stats.addEncoding(encodingStart);
+                }
+
+                Resource resource = body.toResource();
+                long requestStart = System.nanoTime();
+                result = getContext().getResolver().command(
+                        new PropertyImportParams().strategy("update")
+                                .setBody(APPLICATION_JSON.toString(), resource),
+                        JsonNode.class
+                );
+                stats.addRequest(requestStart, resource.contentLength());
+            } catch (Exception e) {
+
+                failedCounter = failedCounter + batch.size();
+                for (FileAndKey fileAndKey : batch) {
+                    out.println("Publishing " + fileAndKey.key + " : failed: " + e.getMessage());
+                }
+
+                continue;
+            }
+
+            Map<String, String> actions = getActionsByKey(result);
+            for (FileAndKey fileAndKey : batch) {
+
+                fileAndKey.action = actions.getOrDefault(fileAndKey.key, "update");
+                onPublished(fileAndKey, publishService);
+                out.println("Publishing " + fileAndKey.key + " : " + fileAndKey.action);
+            }
+        }
+
+        return failedCounter;
+    }
+
+    /**
+     * Groups the given files into batches of max. {@link #BULK_MAX_FILES} files and max. {@link #BULK_MAX_BYTES}.
+     *
+     * @param toPublish
+     * @return
+     */
+    private List<List<FileAndKey>> createBatches(List<FileAndKey> toPublish) {
+
+        List<List<FileAndKey>> batches = new ArrayList<>();
+        List<FileAndKey> batch = new ArrayList<>();
+        long batchBytes = 0;
+
+        for (FileAndKey fileAndKey : toPublish) {
+
+            long size = fileAndKey.file.length();
+
+            if (!batch.isEmpty() && (batch.size() >= BULK_MAX_FILES || batchBytes + size > BULK_MAX_BYTES)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+
+            batch.add(fileAndKey);
+            batchBytes = batchBytes + size;
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        return batches;
+    }
+
+    /**
+     * Maps the per-property results of an import to the property keys: global/app/myapp/... -> create|update.
+     *
+     * @param result
+     * @return
+     */
+    private Map<String, String> getActionsByKey(JsonNode result) {
+
+        Map<String, String> actions = new HashMap<>();
+
+        if (result == null || !result.isArray()) {
+            return actions;
+        }
+
+        for (JsonNode item : result) {
+
+            JsonNode path = item.get(FIELD_PATH);
+            JsonNode action = item.get("result");
+            if (path == null || action == null) {
+                continue;
+            }
+
+            actions.put(toPropertyKey(path.textValue()), action.textValue());
+        }
+
+        return actions;
+    }
+
+    /**
+     * Returns the property type for the given mime type: Binary content is sent base64 encoded.
+     *
+     * @param mimeType
+     * @param binary
+     * @return
+     */
+    private String toContentType(String mimeType, boolean binary) {
+
+        if (binary) {
+            return new ContentType(mimeType + ";encoding=base64").toString();
+        }
+
+        return new ContentType(mimeType).toString();
+    }
+
+    /**
+     * Sends the given file as property to the server. The value is streamed as request body, so the file is never
+     * loaded into memory. Can be called from multiple threads at the same time.
+     *
+     * @param fileAndKey
+     * @param mimeTypeService
+     * @return The action done at server side: create or update.
+     */
+    private String putProperty(FileAndKey fileAndKey, MimeTypeCliService mimeTypeService) {
+
+        File file = fileAndKey.file;
+
+        long mimeStart = System.nanoTime();
+        String propertyType = mimeTypeService.detectMimeType(file.getName());
+        boolean binary = mimeTypeService.isBinary(propertyType);
+        stats.addMimeDetection(mimeStart);
+
+        fileAndKey.type = toContentType(propertyType, binary);
+
+        JsonNode node;
+        long encodingStart = System.nanoTime();
+        try (PropertyValueBody body = new PropertyValueBody(file, binary)) {
+            stats.addEncoding(encodingStart);
+
+            // No value parameter -> The value is taken from the body
+            long requestStart = System.nanoTime();
+            node = getContext().getResolver().command(
+                    new PropertySchemaPutParams().path(fileAndKey.key)
+                            .type(fileAndKey.type).existStrategy("update")
+                            .evalValue("false")
+                            .setBody(TEXT_PLAIN.withCharset(StandardCharsets.UTF_8).toString(), body.toResource()),
+                    JsonNode.class
+            );
+
+            stats.addRequest(requestStart, body.getBytes());
+        }
+
+        return node.get("result").textValue();
+    }
+
+    /**
+     * Updates the counters, the publish registry and the remote index after the given file was successfully
+     * published. The update time in the index is the local time, since the one of the server is unknown here.
+     *
+     * @param fileAndKey
+     * @param publishService
+     */
+    private void onPublished(FileAndKey fileAndKey, PublishCliService publishService) {
+
+        publishService.add(fileAndKey.file);
+        progress.add(fileAndKey.file, fileAndKey.size, fileAndKey.lastModified);
+
+        if (remoteIndex != null) {
+            remoteIndex.update(fileAndKey.key, fileAndKey.type, System.currentTimeMillis());
+        }
+
+        if (fileAndKey.action.equals("create")) {
+            createdCounter++;
+        } else {
+            updatedCounter++;
+        }
+
+        publishedCounter++;
+        filesSinceCheckpoint++;
+
+        if (filesSinceCheckpoint >= CHECKPOINT_FILES ||
+                System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_MILLIS) {
+            checkpoint(publishService);
+        }
+    }
+
+    /**
+     * Saves the publish registry and the progress, so in case the publish gets interrupted, the files published
+     * so far must not be published again.
+     *
+     * @param publishService
+     */
+    private void checkpoint(PublishCliService publishService) {
+
         publishService.save();
+        progress.flush();
+        filesSinceCheckpoint = 0;
+        lastCheckpoint = System.currentTimeMillis();
+    }
 
-        out.println("Found " + filesCounter + " files. " + publishedCounter +
-                " published. " + updatedCounter + " updated. " + createdCounter + " created.");
+    /**
+     * If true, files are published in batches using the import endpoint of the server.
+     * Falls back to single requests in case the server doesn't support this.
+     *
+     * @param bulk
+     */
+    public void setBulk(boolean bulk) {
+        this.bulk = bulk;
+    }
+
+    /**
+     * If true, only prints the files which would be published and doesn't change anything.
+     *
+     * @param dryRun
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * If true, the properties on the server are compared with the local files before publishing a pattern,
+     * so files with the same content as on the server are not uploaded again. Costs one list request per folder and page.
+     * Default is false.
+     *
+     * @param remoteCheck
+     */
+    public void setRemoteCheck(boolean remoteCheck) {
+        this.remoteCheck = remoteCheck;
+    }
+
+    /**
+     * If true, continues an interrupted publish: Files already published by it are skipped, even on a forced
+     * publish, as long as they haven't changed since then.
+     *
+     * @param resume
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * If true, prints the timings and throughput of the publish at the end.
+     * They're also written to {@link PublishStats#REPORT_FILE_NAME} inside the .pipeforce folder in any case.
+     *
+     * @param showStats
+     */
+    public void setShowStats(boolean showStats) {
+        this.showStats = showStats;
+    }
+
+    /**
+     * @return The stats of the last publish.
+     */
+    public PublishStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Sets the number of put requests to keep in flight at the same time.
+     *
+     * @param parallel Must be between 1 and {@link #MAX_PARALLEL}.
+     */
+    public void setParallel(int parallel) {
+
+        if (parallel < 1 || parallel > MAX_PARALLEL) {
+            throw new CliException("Switch " + SWITCH_PARALLEL + " must be between 1 and " + MAX_PARALLEL + ": " +
+                    parallel);
+        }
+
+        this.parallel = parallel;
     }
 
     public int getFilesCounter() {
@@ -201,6 +947,10 @@ public class PublishCliCommand extends BaseCliCommand {
         return createdCounter;
     }
 
+    public int getUnchangedCounter() {
+        return unchangedCounter;
+    }
+
     /**
      * Is it a config property with path global/app/MYAPP/config/...
      *
@@ -227,7 +977,7 @@ public class PublishCliCommand extends BaseCliCommand {
     /**
      * Validates the app config before it gets published.
      * Checks if the value of "show" attribute in the config contains upper case.
-     * If not, converts to upper case.
+     * If not, converts to upper case. On a dry run, the conversion is only reported and the file is not changed.
      * This is the right place to add additional validation / update rules.
      *
      * @param appConfigFile
@@ -256,6 +1006,11 @@ public class PublishCliCommand extends BaseCliCommand {
             return true;
         }
 
+        if (dryRun) {
+            out.println("Would change show of " + appConfigFile + " to " + showUpper);
+            return false;
+        }
+
         appConfig.put("show", showUpper);
 
         String data = JsonUtil.objectToJsonString(appConfig);
@@ -265,21 +1020,53 @@ public class PublishCliCommand extends BaseCliCommand {
 
     public String getUsageHelp() {
 
-        return "pi publish [--force:true|false] <PATH_PATTERN>\n" +
+        return "pi publish [--force:true|false] [--parallel:1-" + MAX_PARALLEL + "] [--bulk:true] [--dryRun] " +
+                "[--remoteCheck:true] [--resume:true] [--stats] <PATH_PATTERN>\n" +
                 "   Publishes all locally created/modified resources from inside properties to the server.\n" +
                 "   <PATH_PATTERN> must point to resources inside the properties folder.\n" +
+                "   --remoteCheck:true compares the changed files with the server before publishing. Files\n" +
+                "     with the same content on the server (same checksum) are skipped.\n" +
+                "   --dryRun only prints which files would be published.\n" +
+                "   Progress is saved while publishing. --resume:true continues an interrupted publish.\n" +
+                "   --stats prints timings and throughput. They're also written to .pipeforce/" +
+                PublishStats.REPORT_FILE_NAME + ".\n" +
+                "   --parallel sets the number of requests sent at the same time. Default is 1.\n" +
+                "   --bulk sends the files in batches using the import endpoint (server >= 10.0.2).\n" +
+                "     Note: On bulk publish the server won't create any jobs or listeners.\n" +
                 "   Examples: \n" +
                 "     pi publish - Publishes all resources inside properties folder.\n" +
                 "     pi publish myapp - Publishes all app resources inside properties/global/app/myapp/**.\n" +
                 "     pi publish properties/global/app/myapp/** - Publishes resources of myapp recursively.\n" +
                 "     pi publish properties/global/app/myapp/ - Same as properties/global/app/myapp/**.\n" +
-                "     pi publish properties/global/app/*/pipeline/* - Publishes all pipelines of all apps.";
+                "     pi publish properties/global/app/*/pipeline/* - Publishes all pipelines of all apps.\n" +
+                "     pi publish --parallel:8 myapp - Publishes myapp using 8 requests at the same time.\n" +
+                "     pi publish --bulk:true myapp - Publishes myapp in batches.\n" +
+                "     pi publish --dryRun myapp - Shows which files of myapp would be published.";
     }
 
     private static class FileAndKey {
 
-        private File file;
+        private final File file;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final String key;
 
-        private String key;
+        private String type;
+
+        private String action;
+
+        private Long remoteLastModified;
+
+        private Exception error;
+
+        FileAndKey(MatchedFile matchedFile, String key) {
+            this.file = matchedFile.getFile();
+            this.size = matchedFile.getSize();
+            this.lastModified = matchedFile.getLastModified();
+            this.key = key;
+        }
     }
 }
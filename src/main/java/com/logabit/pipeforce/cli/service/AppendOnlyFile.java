@@ -0,0 +1,98 @@
+package com.logabit.pipeforce.cli.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes files of UTF-8 lines which are only appended, like journals and progress files.
+ * <p>
+ * Each line ends with a line break. A last line without line break is incomplete, for example after a crash while
+ * writing. On read, it is skipped and cut off, so the next append starts on a new line.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class AppendOnlyFile {
+
+    private AppendOnlyFile() {
+    }
+
+    /**
+     * Passes all complete lines of the given file after the given offset to the given handler and cuts off an
+     * incomplete last line.
+     *
+     * @param file    Must exist.
+     * @param offset  The byte offset to start reading at. Must be the start of a line.
+     * @param handler
+     * @return The offset after the last complete line, which is the length of the file after reading.
+     * @throws IOException
+     */
+    public static long readLines(File file, long offset, LineHandler handler) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+
+            channel.position(offset);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+
+            long fileLength = channel.size();
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                long lineEnd = offset + line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (lineEnd > fileLength) {
+                    break; // Last line without line break -> Incomplete
+                }
+
+                handler.handle(line);
+                offset = lineEnd;
+            }
+
+            if (offset < fileLength) {
+                channel.truncate(offset);
+            }
+
+            return offset;
+        }
+    }
+
+    /**
+     * Appends the given lines to the given file. The file is created if it doesn't exist.
+     *
+     * @param file
+     * @param lines Each line must end with a line break.
+     * @param sync  If true, returns only after the lines have been written to the disk.
+     * @throws IOException
+     */
+    public static void append(File file, CharSequence lines, boolean sync) throws IOException {
+
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        if (sync) {
+            Files.write(file.toPath(), bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                    StandardOpenOption.SYNC);
+        } else {
+            Files.write(file.toPath(), bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Handles a single complete line.
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+
+        /**
+         * @param line The line without line break.
+         * @throws IOException
+         */
+        void handle(String line) throws IOException;
+    }
+}
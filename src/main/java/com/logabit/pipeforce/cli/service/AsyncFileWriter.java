@@ -0,0 +1,188 @@
+package com.logabit.pipeforce.cli.service;
+
+import com.logabit.pipeforce.cli.CliException;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes files in parallel using a fixed number of writer threads.
+ * <p>
+ * Each file is written into a temp file inside the target folder first and then moved to its target using
+ * {@link OutputCliService#commitFile(File, File, long)}. So a target file is never visible partially written, even
+ * if the CLI is killed while writing. All streams are created by the {@link OutputCliService}.
+ * <p>
+ * The number of writes submitted but not finished yet is limited. In case this limit is reached,
+ * {@link #write(File, long, ContentWriter)} blocks until a write has been finished. This way, a fast producer (for
+ * example fetching pages from the server) is slowed down to the speed of the disk instead of filling up the memory.
+ * <p>
+ * In case the target file already exists with the same content, it is left untouched, including its last modified.
+ * So file watchers and build caches are not triggered by a write which doesn't change anything. The content is
+ * compared by size and digest. Both are calculated while streaming, without loading any of the files into memory.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class AsyncFileWriter implements Closeable {
+
+    private static final String TMP_FILE_SUFFIX = ".pipeforce-tmp";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputCliService out;
+
+    private final ExecutorService executor;
+
+    private final Semaphore pendingWrites;
+
+    /**
+     * @param out
+     * @param threads    The number of files written at the same time.
+     * @param maxPending The max. number of writes submitted but not finished yet.
+     */
+    public AsyncFileWriter(OutputCliService out, int threads, int maxPending) {
+        this.out = out;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.pendingWrites = new Semaphore(maxPending);
+    }
+
+    /**
+     * Writes the given file asynchronously. Blocks in case too many writes are pending.
+     *
+     * @param targetFile   The file to write.
+     * @param lastModified The last modified time of the written file.
+     * @param content      Writes the content of the file. Called by a writer thread.
+     * @return A future which completes with the result after the target file has been written or found to have the
+     * same content already. Completes exceptionally in case the file could not be written. In this case, the
+     * target file is unchanged.
+     * @throws InterruptedException In case the caller was interrupted while waiting for a pending write.
+     */
+    public CompletableFuture<Result> write(File targetFile, long lastModified, ContentWriter content)
+            throws InterruptedException {
+
+        pendingWrites.acquire();
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return writeFile(targetFile, lastModified, content);
+                } finally {
+                    pendingWrites.release();
+                }
+            }, executor);
+        } catch (RuntimeException e) {
+            pendingWrites.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all submitted writes have been finished and stops the writer threads.
+     */
+    @Override
+    public void close() {
+
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Result writeFile(File targetFile, long lastModified, ContentWriter content) {
+
+        File folder = targetFile.getAbsoluteFile().getParentFile();
+        folder.mkdirs();
+
+        File tmpFile = new File(folder, "." + targetFile.getName() + "." + UUID.randomUUID() + TMP_FILE_SUFFIX);
+
+        try {
+            MessageDigest digest = PublishCliService.createMessageDigest();
+            CountingOutputStream counter;
+            try (OutputStream os = new DigestOutputStream(counter = new CountingOutputStream(
+                    new BufferedOutputStream(out.createOutputStream(tmpFile), BUFFER_SIZE)), digest)) {
+                content.write(os);
+            }
+
+            String contentDigest = PublishCliService.toDigest(digest);
+            if (isSameContent(targetFile, counter.getByteCount(), contentDigest)) {
+                return new Result(false, contentDigest);
+            }
+
+            out.commitFile(tmpFile, targetFile, lastModified);
+            return new Result(true, contentDigest);
+        } catch (IOException e) {
+            throw new CliException("Could not write file " + targetFile + ": " + e.getMessage(), e);
+        } finally {
+            tmpFile.delete(); // Only exists in case the file has not been committed
+        }
+    }
+
+    /**
+     * @param targetFile
+     * @param size       The size of the new content.
+     * @param digest     The digest of the new content.
+     * @return True in case the target file exists and has the given content.
+     */
+    private boolean isSameContent(File targetFile, long size, String digest) {
+
+        if (!targetFile.isFile() || targetFile.length() != size) {
+            return false;
+        }
+
+        return digest.equals(PublishCliService.createDigest(targetFile));
+    }
+
+    /**
+     * The result of a write.
+     */
+    public static class Result {
+
+        private final boolean written;
+
+        private final String digest;
+
+        private Result(boolean written, String digest) {
+            this.written = written;
+            this.digest = digest;
+        }
+
+        /**
+         * @return True in case the target file has been written or false in case it already had the same content.
+         */
+        public boolean isWritten() {
+            return written;
+        }
+
+        /**
+         * @return The digest of the content, calculated while writing. Saves reading the file again.
+         */
+        public String getDigest() {
+            return digest;
+        }
+    }
+
+    /**
+     * Writes the content of a file.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+
+        void write(OutputStream out) throws IOException;
+    }
+}
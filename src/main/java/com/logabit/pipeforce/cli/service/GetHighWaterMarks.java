@@ -0,0 +1,116 @@
+package com.logabit.pipeforce.cli.service;
+
+import com.logabit.pipeforce.cli.CliException;
+import com.logabit.pipeforce.common.util.FileUtil;
+import com.logabit.pipeforce.common.util.JsonUtil;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers the high-water mark of each get: The latest updated (or created) timestamp of all properties received
+ * by the last complete get of a pattern. A later get of the same pattern only needs the properties changed since
+ * then. The marks are stored as JSON map in the file {@link #FILE_NAME} inside the .pipeforce folder.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class GetHighWaterMarks {
+
+    public static final String FILE_NAME = "get.watermarks.json";
+
+    private static final String KEY_SEPARATOR = "|";
+
+    private final File file;
+
+    private Map<String, Long> marks;
+
+    public GetHighWaterMarks(File pipeforceFolder) {
+        this.file = new File(pipeforceFolder, FILE_NAME);
+    }
+
+    /**
+     * Creates the key of a high-water mark. A get is only incremental in case all of the given parts are the same
+     * as on the last get. For example server, namespace, pattern and target folder.
+     *
+     * @param parts
+     * @return
+     */
+    public static String toKey(Object... parts) {
+
+        StringBuilder key = new StringBuilder();
+        for (Object part : parts) {
+
+            if (key.length() > 0) {
+                key.append(KEY_SEPARATOR);
+            }
+
+            key.append(part);
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * @param key
+     * @return The high-water mark of the given key or 0 in case there is none.
+     */
+    public long get(String key) {
+
+        Long mark = getMarks().get(key);
+        return mark == null ? 0 : mark;
+    }
+
+    /**
+     * Sets the high-water mark of the given key. Call {@link #save()} to write it.
+     *
+     * @param key
+     * @param mark
+     */
+    public void put(String key, long mark) {
+        getMarks().put(key, mark);
+    }
+
+    public void remove(String key) {
+        getMarks().remove(key);
+    }
+
+    public void save() {
+
+        try {
+            FileUtil.createFolders(file.getParentFile());
+            FileUtil.saveStringToFile(JsonUtil.objectToJsonString(getMarks()), file);
+        } catch (Exception e) {
+            throw new CliException("Could not write get high-water marks " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Map<String, Long> getMarks() {
+
+        if (marks != null) {
+            return marks;
+        }
+
+        marks = new TreeMap<>();
+
+        if (!file.exists()) {
+            return marks;
+        }
+
+        try {
+            Map<String, Object> map = JsonUtil.jsonStringToMap(FileUtil.fileToString(file));
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    marks.put(entry.getKey(), ((Number) entry.getValue()).longValue());
+                }
+            }
+        } catch (Exception e) {
+
+            // A broken file only costs a full get
+            marks.clear();
+        }
+
+        return marks;
+    }
+}
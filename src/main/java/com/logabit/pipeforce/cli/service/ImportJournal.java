@@ -0,0 +1,205 @@
+package com.logabit.pipeforce.cli.service;
+
+import com.logabit.pipeforce.cli.CliException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the files already imported by a running import in a journal file, so an interrupted import can be
+ * resumed without sending these files again. Similar to {@link PublishProgress}, it is an {@link AppendOnlyFile}.
+ * There are two kinds of lines, separated by tab:
+ * <ul>
+ *     <li>F, size, last modified and absolute path of a file acknowledged by the server.</li>
+ *     <li>D, number of files, sum of sizes, sum of last modified and absolute path of a folder whose files were all
+ *     acknowledged. Their F lines are not kept in memory. On resume, the files of such a folder are skipped in case
+ *     these sums are still the same. Otherwise a file was added, removed or changed and all files of the folder
+ *     are imported again.</li>
+ * </ul>
+ * The journal file is deleted after the import has been finished successfully.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class ImportJournal {
+
+    public static final String JOURNAL_FILE_NAME = "import.journal";
+
+    private static final String TYPE_FILE = "F";
+
+    private static final String TYPE_FOLDER = "D";
+
+    private final File file;
+
+    /**
+     * The done files of folders not done yet: folder path -> file name -> size, last modified.
+     */
+    private final Map<String, Map<String, long[]>> doneFiles = new HashMap<>();
+
+    /**
+     * The done folders: folder path -> number of files, sum of sizes, sum of last modified.
+     */
+    private final Map<String, long[]> doneFolders = new HashMap<>();
+
+    private final StringBuilder pendingLines = new StringBuilder();
+
+    public ImportJournal(File pipeforceFolder) {
+        this.file = new File(pipeforceFolder, JOURNAL_FILE_NAME);
+    }
+
+    /**
+     * @return True in case a journal of a previous import exists which was not finished.
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Loads the files and folders done by a previous import.
+     */
+    public void load() {
+
+        doneFiles.clear();
+        doneFolders.clear();
+
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            AppendOnlyFile.readLines(file, 0, line -> {
+
+                String[] split = line.split("\t", 5);
+                if (split.length == 4 && TYPE_FILE.equals(split[0])) {
+
+                    File doneFile = new File(split[3]);
+                    doneFiles.computeIfAbsent(doneFile.getParent(), k -> new HashMap<>())
+                            .put(doneFile.getName(), new long[]{Long.parseLong(split[1]), Long.parseLong(split[2])});
+
+                } else if (split.length == 5 && TYPE_FOLDER.equals(split[0])) {
+                    doneFolders.put(split[4], new long[]{Long.parseLong(split[1]), Long.parseLong(split[2]),
+                            Long.parseLong(split[3])});
+                    doneFiles.remove(split[4]);
+                }
+            });
+        } catch (IOException | NumberFormatException e) {
+            throw new CliException("Could not read import journal " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the journal of any previous import.
+     */
+    public void delete() {
+
+        doneFiles.clear();
+        doneFolders.clear();
+        pendingLines.setLength(0);
+
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            throw new CliException("Could not delete import journal " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param folder
+     * @return True in case all files of the given folder were imported by the previous import. Use
+     * {@link #isFolderDone(File, long, long, long)} to check whether they are still the same.
+     */
+    public boolean hasFolder(File folder) {
+        return doneFolders.containsKey(folder.getAbsolutePath());
+    }
+
+    /**
+     * Checks whether all files of the given folder were imported by the previous import and no file has been added,
+     * removed or changed since then.
+     *
+     * @param folder
+     * @param files           The number of files in the folder now.
+     * @param bytes           The sum of their sizes.
+     * @param lastModifiedSum The sum of their last modified.
+     * @return
+     */
+    public boolean isFolderDone(File folder, long files, long bytes, long lastModifiedSum) {
+
+        long[] done = doneFolders.get(folder.getAbsolutePath());
+        return done != null && Arrays.equals(done, new long[]{files, bytes, lastModifiedSum});
+    }
+
+    /**
+     * Checks whether the given file was already imported by the previous import and has not changed since then.
+     *
+     * @param file
+     * @param size
+     * @param lastModified
+     * @return
+     */
+    public boolean isDone(File file, long size, long lastModified) {
+
+        File absoluteFile = file.getAbsoluteFile();
+        Map<String, long[]> folderFiles = doneFiles.get(absoluteFile.getParent());
+        if (folderFiles == null) {
+            return false;
+        }
+
+        long[] done = folderFiles.get(absoluteFile.getName());
+        return (done != null) && (done[0] == size) && (done[1] == lastModified);
+    }
+
+    /**
+     * Marks the given file as imported. Call {@link #flush()} to write it. Since each file is visited only once
+     * per import, it is not added to the files checked by {@link #isDone(File, long, long)}.
+     *
+     * @param file
+     * @param size
+     * @param lastModified
+     */
+    public void add(File file, long size, long lastModified) {
+
+        pendingLines.append(TYPE_FILE).append('\t').append(size).append('\t').append(lastModified).append('\t')
+                .append(file.getAbsolutePath()).append('\n');
+    }
+
+    /**
+     * Marks all files of the given folder as imported. Call {@link #flush()} to write it.
+     *
+     * @param folder
+     * @param files           The number of files in the folder.
+     * @param bytes           The sum of their sizes.
+     * @param lastModifiedSum The sum of their last modified.
+     */
+    public void addFolder(File folder, long files, long bytes, long lastModifiedSum) {
+
+        doneFiles.remove(folder.getAbsolutePath());
+        pendingLines.append(TYPE_FOLDER).append('\t').append(files).append('\t').append(bytes).append('\t')
+                .append(lastModifiedSum).append('\t').append(folder.getAbsolutePath()).append('\n');
+    }
+
+    /**
+     * Appends all files and folders marked as imported since the last flush to the journal file.
+     */
+    public void flush() {
+
+        if (pendingLines.length() == 0) {
+            return;
+        }
+
+        try {
+            AppendOnlyFile.append(file, pendingLines, true);
+        } catch (IOException e) {
+            throw new CliException("Could not write import journal " + file + ": " + e.getMessage(), e);
+        }
+
+        pendingLines.setLength(0);
+    }
+}
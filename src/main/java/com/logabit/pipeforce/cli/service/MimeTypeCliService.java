@@ -0,0 +1,161 @@
+package com.logabit.pipeforce.cli.service;
+
+import com.logabit.pipeforce.cli.BaseCliContextAware;
+import com.logabit.pipeforce.common.content.service.MimeTypeService;
+import org.apache.tika.Tika;
+import org.apache.tika.config.TikaConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves mime types of file names and file extensions of mime types.
+ * <p>
+ * Results are cached per file extension and mime type. The cache is pre-filled from the table
+ * {@link #TABLE_RESOURCE} which is generated at build time by {@link MimeTypeTableGenerator} using the same
+ * {@link MimeTypeService} as at runtime. Only if an extension or mime type is not known yet, the
+ * {@link MimeTypeService} is created, which loads Tika and its config. So for most workspaces, Tika is never loaded.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class MimeTypeCliService extends BaseCliContextAware {
+
+    public static final String TABLE_RESOURCE = "/mime-types.properties";
+
+    static final String PREFIX_EXTENSION = "extension.";
+
+    static final String PREFIX_MIME_TYPE = "mimeType.";
+
+    static final String PREFIX_BINARY = "binary.";
+
+    private final Map<String, String> mimeTypeByExtension = new ConcurrentHashMap<>();
+
+    private final Map<String, String> extensionByMimeType = new ConcurrentHashMap<>();
+
+    private final Map<String, Boolean> binaryByMimeType = new ConcurrentHashMap<>();
+
+    private volatile MimeTypeService mimeTypeService;
+
+    public MimeTypeCliService() {
+        loadTable();
+    }
+
+    /**
+     * Returns the mime type of the given file name. For example application/json for person.json.
+     *
+     * @param fileName
+     * @return
+     */
+    public String detectMimeType(String fileName) {
+
+        String extension = getExtension(fileName);
+
+        if (extension == null) {
+            return getMimeTypeService().detectMimeType(fileName);
+        }
+
+        return mimeTypeByExtension.computeIfAbsent(extension, e -> getMimeTypeService().detectMimeType(fileName));
+    }
+
+    /**
+     * Returns the file extension including the leading dot for the given mime type. For example .json for
+     * application/json.
+     *
+     * @param mimeType
+     * @return
+     */
+    public String getFileExtensionForMimeType(String mimeType) {
+        return extensionByMimeType.computeIfAbsent(mimeType,
+                m -> getMimeTypeService().getFileExtensionForMimeType(m));
+    }
+
+    /**
+     * Returns true in case the content of the given mime type is binary and must be base64 encoded.
+     *
+     * @param mimeType
+     * @return
+     */
+    public boolean isBinary(String mimeType) {
+        return binaryByMimeType.computeIfAbsent(mimeType, m -> getMimeTypeService().isBinary(m));
+    }
+
+    /**
+     * Returns the lower case extension of the given file name to be used as cache key, starting at the first dot.
+     * For example .pi.yaml for mypipeline.pi.yaml. Returns null in case the mime type is possibly not detected by
+     * extension but by the name itself, like Makefile, .htaccess or i_study.txt (ISA-Tab). Such names are not cached.
+     *
+     * @param fileName
+     * @return
+     */
+    static String getExtension(String fileName) {
+
+        if (fileName == null) {
+            return null;
+        }
+
+        int dotIndex = fileName.indexOf('.', 1);
+        if (dotIndex < 0) {
+            return null;
+        }
+
+        if (fileName.charAt(1) == '_') {
+            return null;
+        }
+
+        return fileName.substring(dotIndex).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the mime type service and creates it on first access. This loads Tika and its config.
+     *
+     * @return
+     */
+    private MimeTypeService getMimeTypeService() {
+
+        if (mimeTypeService == null) {
+            synchronized (this) {
+                if (mimeTypeService == null) {
+                    mimeTypeService = new MimeTypeService(new Tika(), TikaConfig.getDefaultConfig());
+                }
+            }
+        }
+
+        return mimeTypeService;
+    }
+
+    private void loadTable() {
+
+        try (InputStream is = MimeTypeCliService.class.getResourceAsStream(TABLE_RESOURCE)) {
+
+            if (is == null) {
+                LOG.debug("No mime type table found at " + TABLE_RESOURCE + ". Using Tika only.");
+                return;
+            }
+
+            Properties table = new Properties();
+            table.load(is);
+
+            for (String key : table.stringPropertyNames()) {
+
+                String value = table.getProperty(key);
+
+                if (key.startsWith(PREFIX_EXTENSION)) {
+                    mimeTypeByExtension.put(key.substring(PREFIX_EXTENSION.length()), value);
+                } else if (key.startsWith(PREFIX_MIME_TYPE)) {
+                    extensionByMimeType.put(key.substring(PREFIX_MIME_TYPE.length()), value);
+                } else if (key.startsWith(PREFIX_BINARY)) {
+                    binaryByMimeType.put(key.substring(PREFIX_BINARY.length()), Boolean.valueOf(value));
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not load mime type table " + TABLE_RESOURCE + ": " + e.getMessage(), e);
+        }
+    }
+}
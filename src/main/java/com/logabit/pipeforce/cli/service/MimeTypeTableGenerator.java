@@ -0,0 +1,109 @@
+package com.logabit.pipeforce.cli.service;
+
+import com.logabit.pipeforce.common.content.service.MimeTypeService;
+import org.apache.tika.Tika;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MimeType;
+import org.apache.tika.mime.MimeTypeException;
+import org.apache.tika.mime.MimeTypes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.logabit.pipeforce.cli.service.MimeTypeCliService.PREFIX_BINARY;
+import static com.logabit.pipeforce.cli.service.MimeTypeCliService.PREFIX_EXTENSION;
+import static com.logabit.pipeforce.cli.service.MimeTypeCliService.PREFIX_MIME_TYPE;
+
+/**
+ * Generates the mime type table used by {@link MimeTypeCliService} at build time.
+ * Each extension known by Tika is resolved using the {@link MimeTypeService}, so the table contains exactly
+ * the results the service would return at runtime. See the exec-maven-plugin in the pom.xml.
+ * <p>
+ * Usage: MimeTypeTableGenerator TARGET_FILE
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class MimeTypeTableGenerator {
+
+    /**
+     * Extensions of PIPEFORCE resources which are not known by Tika.
+     */
+    private static final String[] PIPEFORCE_EXTENSIONS = new String[]{".pi.yaml"};
+
+    public static void main(String[] args) throws IOException, MimeTypeException {
+
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: MimeTypeTableGenerator TARGET_FILE");
+        }
+
+        MimeTypeService mimeTypeService = new MimeTypeService(new Tika(), TikaConfig.getDefaultConfig());
+
+        Set<String> extensions = new TreeSet<>(Arrays.asList(PIPEFORCE_EXTENSIONS));
+        MimeTypes mimeTypes = MimeTypes.getDefaultMimeTypes();
+        for (MediaType mediaType : mimeTypes.getMediaTypeRegistry().getTypes()) {
+
+            MimeType mimeType = mimeTypes.forName(mediaType.toString());
+            for (String extension : mimeType.getExtensions()) {
+                extensions.add(extension.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        SortedProperties table = new SortedProperties();
+        for (String extension : extensions) {
+
+            String mimeType = mimeTypeService.detectMimeType("file" + extension);
+            if (mimeType == null) {
+                continue;
+            }
+
+            table.setProperty(PREFIX_EXTENSION + extension, mimeType);
+
+            String mimeTypeExtension = mimeTypeService.getFileExtensionForMimeType(mimeType);
+            if (mimeTypeExtension != null) {
+                table.setProperty(PREFIX_MIME_TYPE + mimeType, mimeTypeExtension);
+            }
+
+            table.setProperty(PREFIX_BINARY + mimeType, String.valueOf(mimeTypeService.isBinary(mimeType)));
+        }
+
+        File targetFile = new File(args[0]);
+        targetFile.getParentFile().mkdirs();
+        try (OutputStream os = new FileOutputStream(targetFile)) {
+            table.store(os, "Generated by " + MimeTypeTableGenerator.class.getSimpleName() + ". Do not edit.");
+        }
+
+        System.out.println("Generated mime type table with " + extensions.size() + " extensions: " + targetFile);
+    }
+
+    /**
+     * Stores the entries sorted by key, so the generated table is stable across builds.
+     */
+    private static class SortedProperties extends Properties {
+
+        @Override
+        public synchronized Enumeration<Object> keys() {
+            return Collections.enumeration(new TreeSet<>(super.keySet()));
+        }
+
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+
+            Set<Map.Entry<Object, Object>> entries =
+                    new TreeSet<>((a, b) -> a.getKey().toString().compareTo(b.getKey().toString()));
+            entries.addAll(super.entrySet());
+            return entries;
+        }
+    }
+}
@@ -16,9 +16,11 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -31,6 +33,18 @@ import java.util.UUID;
  */
 public class OutputCliService implements CliContextAware {
 
+    /**
+     * The switch to set the output format: -o:plain or -o:ndjson.
+     */
+    public static final String SWITCH_OUTPUT = "o";
+
+    public static final String OUTPUT_PLAIN = "plain";
+
+    /**
+     * One JSON object per line.
+     */
+    public static final String OUTPUT_NDJSON = "ndjson";
+
     private static final Logger LOG = LoggerFactory.getLogger(Main.class);
 
     private AnimationRunnable runnable;
@@ -56,8 +70,7 @@ public class OutputCliService implements CliContextAware {
             return;
         }
 
-        String outputSwitch = context.getArgs().getSwitch("-o");
-        if (StringUtil.isEqual(outputSwitch, "plain")) {
+        if (StringUtil.isEqual(getOutputFormat(), OUTPUT_PLAIN)) {
             LOG.info(result + "");
             System.out.println(result); // Plain text as it is
         } else {
@@ -67,6 +80,32 @@ public class OutputCliService implements CliContextAware {
         return;
     }
 
+    /**
+     * @return The output format set by the switch -o:FORMAT or null in case the default (YAML) should be used.
+     */
+    public String getOutputFormat() {
+        return context.getArgs().getSwitch(SWITCH_OUTPUT);
+    }
+
+    /**
+     * Prints the given lines at once and flushes them, so the next program in a pipe receives them immediately.
+     * Unlike {@link #println(String)}, the lines are not recorded. So this can be called for any number of lines.
+     *
+     * @param lines
+     * @return False in case the output has been closed, for example since the next program in a pipe has exited.
+     */
+    public boolean printLines(Collection<String> lines) {
+
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append(System.lineSeparator());
+        }
+
+        System.out.print(text);
+        System.out.flush();
+        return !System.out.checkError();
+    }
+
     private void wrapToRootAndPrint(Map map) {
 
         Map resultRoot = ListUtil.asLinkedMap("result", map);
@@ -186,6 +225,30 @@ public class OutputCliService implements CliContextAware {
         }
     }
 
+    /**
+     * Moves a completely written temp file to its target file, so the target file either has the old or the new
+     * content, but is never partially written. The temp file must be located in the same folder as the target.
+     *
+     * @param tmpFile
+     * @param targetFile
+     * @param lastModified The last modified time to set before the target file becomes visible.
+     */
+    public void commitFile(File tmpFile, File targetFile, long lastModified) {
+
+        tmpFile.setLastModified(lastModified);
+
+        try {
+            try {
+                Files.move(tmpFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new CliException("Could not write file " + targetFile + ": " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Animation Runnable
      */
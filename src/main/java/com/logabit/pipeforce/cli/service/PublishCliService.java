@@ -1,39 +1,131 @@
 package com.logabit.pipeforce.cli.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.logabit.pipeforce.cli.BaseCliContextAware;
+import com.logabit.pipeforce.cli.CliException;
 import com.logabit.pipeforce.common.util.FileUtil;
 import com.logabit.pipeforce.common.util.JsonUtil;
+import org.apache.commons.codec.binary.Hex;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Manages the published.log.json file inside of each app repo.
+ * <p>
+ * Each entry is keyed by the absolute path of the local file and contains its size, last modified and a digest
+ * of its content. A file is considered as unchanged in case size and last modified are the same (cheap path) or
+ * in case the content digest is the same (fallback, for example after a git checkout or a touch).
+ * Entries of older versions containing only the last modified in seconds are still supported.
+ * <p>
+ * The published.log.json file is the snapshot of the published map. Changes are not written into this snapshot
+ * on each save. Instead, they are appended as single lines to the published.journal file. As soon as the journal
+ * contains more records than the snapshot has entries (but at least {@link #JOURNAL_COMPACT_MIN_RECORDS}), the
+ * journal is compacted into a new snapshot. On load, the snapshot is read and the journal is replayed on top of it.
+ * In case the snapshot didn't change since the last load of this instance, only the new journal records are read.
  *
  * @author sniederm
  * @since 6.0
  */
 public class PublishCliService extends BaseCliContextAware {
 
+    public static final String FIELD_LAST_MODIFIED = "lastModified";
+
+    public static final String FIELD_SIZE = "size";
+
+    public static final String FIELD_DIGEST = "digest";
+
+    /**
+     * The last modified of the remote property a file was downloaded from.
+     */
+    public static final String FIELD_REMOTE_LAST_MODIFIED = "remoteLastModified";
+
+    public static final String SNAPSHOT_FILE_NAME = "published.log.json";
+
+    public static final String JOURNAL_FILE_NAME = "published.journal";
+
+    public static final int JOURNAL_COMPACT_MIN_RECORDS = 1000;
+
+    private static final String OP_PUT = "put";
+
+    private static final String OP_REMOVE = "remove";
+
+    private static final String OP_REMOVE_FOLDER = "removeFolder";
+
+    private static final String OP_REMOVE_ALL = "removeAll";
+
+    private static final ObjectMapper JOURNAL_MAPPER = new ObjectMapper();
 
     private Map publishedMap = new HashMap<>();
 
+    /**
+     * The changes since the last save, in the order they happened.
+     */
+    private final List<Map<String, Object>> pendingRecords = new ArrayList<>();
+
+    /**
+     * The number of records in the journal file.
+     */
+    private int journalRecords;
+
+    /**
+     * The position in the journal file up to which all records were applied to the published map.
+     */
+    private long journalOffset;
+
+    /**
+     * The last modified of the snapshot file when it was loaded. -1 if not loaded yet.
+     */
+    private long snapshotLastModified = -1;
+
     /**
      * Loads the published map from the home folder.
+     * If the snapshot didn't change since the last load, only new journal records are applied.
      */
     public void load() {
 
-        String publishedString = FileUtil.fileToString(
-                new File(getContext().getHiddenPipeforceFolder(), "published.log.json")
-        );
+        File snapshotFile = getSnapshotFile();
+        File journalFile = getJournalFile();
+
+        long lastModified = snapshotFile.exists() ? snapshotFile.lastModified() : 0;
+        // Unsaved changes are dropped on load -> In this case a full reload is required
+        boolean incremental = pendingRecords.isEmpty() && (snapshotLastModified == lastModified) &&
+                (journalFile.length() >= journalOffset);
+
+        if (!incremental) {
+
+            Map snapshot = null;
+            if (snapshotFile.exists()) {
+                snapshot = JsonUtil.jsonStringToMap(FileUtil.fileToString(snapshotFile));
+            }
+
+            this.publishedMap = (snapshot == null) ? new HashMap<>() : snapshot;
+            this.snapshotLastModified = lastModified;
+            this.journalOffset = 0;
+            this.journalRecords = 0;
+        }
 
-        this.publishedMap = JsonUtil.jsonStringToMap(publishedString);
+        pendingRecords.clear();
+        replayJournal(journalFile);
     }
 
     /**
-     * Saves the published map into the home folder.
+     * Saves the published map into the home folder by appending all changes since the last save to the journal.
+     * Compacts the journal into a new snapshot if it has grown too big.
      */
     public void save() {
 
@@ -41,12 +133,134 @@ public class PublishCliService extends BaseCliContextAware {
             return;
         }
 
-        String json = JsonUtil.objectToJsonString(publishedMap);
-        FileUtil.saveStringToFile(json, new File(getContext().getHiddenPipeforceFolder(), "published.log.json"));
+        File journalFile = getJournalFile();
+
+        if (!pendingRecords.isEmpty()) {
+
+            StringBuilder lines = new StringBuilder();
+            for (Map<String, Object> record : pendingRecords) {
+                lines.append(toJournalLine(record)).append('\n');
+            }
+
+            try {
+                FileUtil.createFolders(journalFile.getParentFile());
+                AppendOnlyFile.append(journalFile, lines, false);
+            } catch (IOException e) {
+                throw new CliException("Could not write publish journal " + journalFile + ": " + e.getMessage(), e);
+            }
+
+            journalRecords = journalRecords + pendingRecords.size();
+            journalOffset = journalFile.length();
+            pendingRecords.clear();
+        }
+
+        if (journalRecords >= Math.max(JOURNAL_COMPACT_MIN_RECORDS, publishedMap.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes the current published map as new snapshot and clears the journal.
+     * The snapshot is written into a temp file first and then moved, so it is never left half written.
+     */
+    public void compact() {
+
+        File snapshotFile = getSnapshotFile();
+        File tmpFile = new File(snapshotFile.getParentFile(), SNAPSHOT_FILE_NAME + ".tmp");
+
+        try {
+            FileUtil.saveStringToFile(JsonUtil.objectToJsonString(publishedMap), tmpFile);
+            try {
+                Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Files.deleteIfExists(getJournalFile().toPath());
+        } catch (IOException e) {
+            throw new CliException("Could not compact publish journal: " + e.getMessage(), e);
+        }
+
+        snapshotLastModified = snapshotFile.lastModified();
+        journalOffset = 0;
+        journalRecords = 0;
+    }
+
+    /**
+     * Applies all complete journal records after the current offset to the published map.
+     * An incomplete last line (for example after a crash while writing) is cut off.
+     *
+     * @param journalFile
+     */
+    private void replayJournal(File journalFile) {
+
+        if (!journalFile.exists() || journalFile.length() <= journalOffset) {
+            return;
+        }
+
+        try {
+            journalOffset = AppendOnlyFile.readLines(journalFile, journalOffset, line -> {
+
+                if (!line.isEmpty()) {
+                    applyRecord(JOURNAL_MAPPER.readValue(line, Map.class));
+                    journalRecords++;
+                }
+            });
+        } catch (IOException e) {
+            throw new CliException("Could not read publish journal " + journalFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void applyRecord(Map record) {
+
+        String op = (String) record.get("op");
+        String path = (String) record.get("path");
+
+        if (OP_PUT.equals(op)) {
+            publishedMap.put(path, record.get("entry"));
+        } else if (OP_REMOVE.equals(op)) {
+            publishedMap.remove(path);
+        } else if (OP_REMOVE_FOLDER.equals(op)) {
+            publishedMap.keySet().removeIf(k -> (k + "").startsWith(path));
+        } else if (OP_REMOVE_ALL.equals(op)) {
+            publishedMap.keySet().removeAll((Collection) record.get("paths"));
+        }
+    }
+
+    private void addRecord(String op, String path, Map entry) {
+
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("op", op);
+        record.put("path", path);
+
+        if (entry != null) {
+            record.put("entry", new LinkedHashMap<>(entry));
+        }
+
+        pendingRecords.add(record);
+    }
+
+    private String toJournalLine(Map<String, Object> record) {
+
+        try {
+            return JOURNAL_MAPPER.writeValueAsString(record);
+        } catch (JsonProcessingException e) {
+            throw new CliException("Could not write publish journal record: " + e.getMessage(), e);
+        }
+    }
+
+    private File getSnapshotFile() {
+        return new File(getContext().getHiddenPipeforceFolder(), SNAPSHOT_FILE_NAME);
+    }
+
+    private File getJournalFile() {
+        return new File(getContext().getHiddenPipeforceFolder(), JOURNAL_FILE_NAME);
     }
 
     /**
      * Adds a new entry to the published map. If such an entry already exists, doesnt add and returns false.
+     * Since no size and digest is given here, the entry can only be checked by its last modified.
      *
      * @param path
      * @param lastModified in milliseconds since 1970
@@ -54,15 +268,159 @@ public class PublishCliService extends BaseCliContextAware {
      */
     public boolean add(String path, long lastModified) {
 
-        lastModified = lastModified / 1000;
-        if (publishedMap.containsKey(path)) {
-            Long lastModifiedEntry = Long.valueOf(publishedMap.get(path) + "");
-            if (lastModifiedEntry == lastModified) {
-                return false;
-            }
+        if (isPublished(path, lastModified)) {
+            return false;
+        }
+
+        Map entry = new LinkedHashMap();
+        entry.put(FIELD_LAST_MODIFIED, lastModified);
+        publishedMap.put(path, entry);
+        addRecord(OP_PUT, path, entry);
+        return true;
+    }
+
+    /**
+     * Adds the given file to the published map or replaces its existing entry.
+     * Stores size, last modified and the digest of its content.
+     *
+     * @param file
+     */
+    public void add(File file) {
+        add(file, null);
+    }
+
+    /**
+     * Same as {@link #add(File)} but also stores the last modified of the remote property the file was downloaded
+     * from. Needed in case the file has a different last modified, since its content was already up to date.
+     *
+     * @param file
+     * @param remoteLastModified in milliseconds since 1970 or null in case the file was not downloaded.
+     */
+    public void add(File file, Long remoteLastModified) {
+        add(file, remoteLastModified, null);
+    }
+
+    /**
+     * Same as {@link #add(File, Long)} but with the digest of the file already known, for example since it was
+     * calculated while writing the file. So the file doesn't have to be read again.
+     *
+     * @param file
+     * @param remoteLastModified in milliseconds since 1970 or null in case the file was not downloaded.
+     * @param digest             The digest of the file as created by {@link #createDigest(File)} or null to
+     *                           create it.
+     */
+    public void add(File file, Long remoteLastModified, String digest) {
+
+        Map entry = new LinkedHashMap();
+        entry.put(FIELD_LAST_MODIFIED, file.lastModified());
+        entry.put(FIELD_SIZE, file.length());
+        entry.put(FIELD_DIGEST, (digest != null) ? digest : createDigest(file));
+
+        if (remoteLastModified != null) {
+            entry.put(FIELD_REMOTE_LAST_MODIFIED, remoteLastModified);
+        }
+
+        publishedMap.put(file.getAbsolutePath(), entry);
+        addRecord(OP_PUT, file.getAbsolutePath(), entry);
+    }
+
+    /**
+     * Checks whether the given file was downloaded from a remote property with the given last modified and has
+     * not been changed locally since then.
+     *
+     * @param file
+     * @param remoteLastModified in milliseconds since 1970
+     * @return True in case the file is up to date with the remote property.
+     */
+    public boolean isDownloaded(File file, long remoteLastModified) {
+
+        Object entry = publishedMap.get(file.getAbsolutePath());
+        if (!(entry instanceof Map)) {
+            return false;
+        }
+
+        Object remoteEntry = ((Map) entry).get(FIELD_REMOTE_LAST_MODIFIED);
+        if (remoteEntry == null || Long.parseLong(remoteEntry + "") != remoteLastModified) {
+            return false;
+        }
+
+        return isPublished(file);
+    }
+
+    /**
+     * Checks whether an entry with given path and last modified exists in the published map without changing it.
+     *
+     * @param path
+     * @param lastModified in milliseconds since 1970
+     * @return True in case the given entry already exists.
+     */
+    public boolean isPublished(String path, long lastModified) {
+
+        Object entry = publishedMap.get(path);
+
+        if (entry == null) {
+            return false;
+        }
+
+        if (!(entry instanceof Map)) {
+            // Entry of older version: Last modified in seconds
+            return Long.parseLong(entry + "") == lastModified / 1000;
+        }
+
+        Object lastModifiedEntry = ((Map) entry).get(FIELD_LAST_MODIFIED);
+        return (lastModifiedEntry != null) && Long.parseLong(lastModifiedEntry + "") == lastModified;
+    }
+
+    /**
+     * Checks whether the given file is unchanged since it was added to the published map.
+     * First, size and last modified are compared. Only if they differ but the size is the same,
+     * the digest of the file content is calculated and compared. If the content is the same, the new last modified
+     * is remembered, so next time the cheap path matches again.
+     *
+     * @param file
+     * @return True in case the file is in the published map and its content has not changed.
+     */
+    public boolean isPublished(File file) {
+        return isPublished(file, file.length(), file.lastModified());
+    }
+
+    /**
+     * Same as {@link #isPublished(File)} but uses the given size and last modified instead of reading them
+     * from the file system again. For example, in case they are already known from walking the file tree.
+     *
+     * @param file
+     * @param size         The size of the file in bytes.
+     * @param lastModified The last modified of the file in milliseconds since 1970.
+     * @return True in case the file is in the published map and its content has not changed.
+     */
+    public boolean isPublished(File file, long size, long lastModified) {
+
+        String path = file.getAbsolutePath();
+        Object entry = publishedMap.get(path);
+
+        if (!(entry instanceof Map)) {
+            return isPublished(path, lastModified);
+        }
+
+        Map entryMap = (Map) entry;
+        Object sizeEntry = entryMap.get(FIELD_SIZE);
+
+        if (sizeEntry != null && Long.parseLong(sizeEntry + "") != size) {
+            return false; // Size differs -> Content has changed for sure
+        }
+
+        if (isPublished(path, lastModified)) {
+            return true;
         }
 
-        publishedMap.put(path, lastModified);
+        Object digestEntry = entryMap.get(FIELD_DIGEST);
+        if (digestEntry == null || !digestEntry.equals(createDigest(file))) {
+            return false;
+        }
+
+        // Same content but touched -> Remember new last modified
+        entryMap.put(FIELD_LAST_MODIFIED, lastModified);
+        addRecord(OP_PUT, path, entryMap);
         return true;
     }
 
@@ -77,7 +435,37 @@ public class PublishCliService extends BaseCliContextAware {
             return;
         }
 
-        publishedMap.remove(targetPath);
+        if (publishedMap.remove(targetPath) != null) {
+            addRecord(OP_REMOVE, targetPath, null);
+        }
+    }
+
+    /**
+     * Removes all given path entries at once. Writes a single journal record for all of them.
+     *
+     * @param targetPaths
+     */
+    public void removeAll(Collection<String> targetPaths) {
+
+        if (publishedMap == null) {
+            return;
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (String targetPath : targetPaths) {
+            if (publishedMap.remove(targetPath) != null) {
+                removed.add(targetPath);
+            }
+        }
+
+        if (removed.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("op", OP_REMOVE_ALL);
+        record.put("paths", removed);
+        pendingRecords.add(record);
     }
 
     /**
@@ -86,10 +474,70 @@ public class PublishCliService extends BaseCliContextAware {
      */
     public void removeFolder(String targetPath) {
 
-        publishedMap.keySet().removeIf(k -> (k + "").startsWith(targetPath));
+        if (publishedMap.keySet().removeIf(k -> (k + "").startsWith(targetPath))) {
+            addRecord(OP_REMOVE_FOLDER, targetPath, null);
+        }
     }
 
     public Map getPublishedMap() {
         return Collections.unmodifiableMap(publishedMap);
     }
+
+    /**
+     * Creates the digest of the given file content in the format md5=HEX. Reads the file as stream.
+     *
+     * @param file
+     * @return
+     */
+    public static String createDigest(File file) {
+
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            return createDigest(is);
+        } catch (IOException e) {
+            throw new CliException("Could not create digest of file: " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the digest of the given stream content in the format md5=HEX. Doesn't close the stream.
+     *
+     * @param is
+     * @return
+     * @throws IOException
+     */
+    public static String createDigest(InputStream is) throws IOException {
+
+        MessageDigest md5Digest = createMessageDigest();
+
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            md5Digest.update(buffer, 0, read);
+        }
+
+        return toDigest(md5Digest);
+    }
+
+    /**
+     * Creates the message digest used by {@link #createDigest(InputStream)}. For example, to calculate the digest
+     * while writing a stream using a {@link java.security.DigestOutputStream}.
+     *
+     * @return
+     */
+    public static MessageDigest createMessageDigest() {
+
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new CliException("Could not create digest: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param messageDigest A digest created by {@link #createMessageDigest()}. It is reset afterwards.
+     * @return The digest in the format md5=HEX.
+     */
+    public static String toDigest(MessageDigest messageDigest) {
+        return "md5=" + new String(Hex.encodeHex(messageDigest.digest()));
+    }
 }
@@ -0,0 +1,127 @@
+package com.logabit.pipeforce.cli.service;
+
+import com.logabit.pipeforce.cli.CliException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the files already published by a running publish in a progress file, so an interrupted publish can
+ * be resumed, even if it was a forced one. Each line of the progress file contains size, last modified and
+ * absolute path of a published file, separated by tab. It is an {@link AppendOnlyFile}, so an incomplete last line
+ * (for example after a crash while writing) is cut off on load.
+ * <p>
+ * The progress file is deleted after the publish has been finished successfully.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PublishProgress {
+
+    public static final String PROGRESS_FILE_NAME = "publish.progress";
+
+    private final File file;
+
+    private final Map<String, long[]> doneFiles = new HashMap<>();
+
+    private final StringBuilder pendingLines = new StringBuilder();
+
+    public PublishProgress(File pipeforceFolder) {
+        this.file = new File(pipeforceFolder, PROGRESS_FILE_NAME);
+    }
+
+    /**
+     * @return True in case a progress of a previous publish exists which was not finished.
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Loads the files done by a previous publish.
+     */
+    public void load() {
+
+        doneFiles.clear();
+
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            AppendOnlyFile.readLines(file, 0, line -> {
+
+                String[] split = line.split("\t", 3);
+                if (split.length == 3) {
+                    doneFiles.put(split[2], new long[]{Long.parseLong(split[0]), Long.parseLong(split[1])});
+                }
+            });
+        } catch (IOException | NumberFormatException e) {
+            throw new CliException("Could not read publish progress " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the progress of any previous publish.
+     */
+    public void delete() {
+
+        doneFiles.clear();
+        pendingLines.setLength(0);
+
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            throw new CliException("Could not delete publish progress " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks whether the given file was already published by the previous publish and has not changed since then.
+     *
+     * @param file
+     * @param size
+     * @param lastModified
+     * @return
+     */
+    public boolean isDone(File file, long size, long lastModified) {
+
+        long[] done = doneFiles.get(file.getAbsolutePath());
+        return (done != null) && (done[0] == size) && (done[1] == lastModified);
+    }
+
+    /**
+     * Marks the given file as published. Call {@link #flush()} to write it.
+     *
+     * @param file
+     * @param size
+     * @param lastModified
+     */
+    public void add(File file, long size, long lastModified) {
+
+        doneFiles.put(file.getAbsolutePath(), new long[]{size, lastModified});
+        pendingLines.append(size).append('\t').append(lastModified).append('\t').append(file.getAbsolutePath())
+                .append('\n');
+    }
+
+    /**
+     * Appends all files marked as published since the last flush to the progress file.
+     */
+    public void flush() {
+
+        if (pendingLines.length() == 0) {
+            return;
+        }
+
+        try {
+            AppendOnlyFile.append(file, pendingLines, true);
+        } catch (IOException e) {
+            throw new CliException("Could not write publish progress " + file + ": " + e.getMessage(), e);
+        }
+
+        pendingLines.setLength(0);
+    }
+}
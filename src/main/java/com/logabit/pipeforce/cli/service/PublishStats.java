@@ -0,0 +1,204 @@
+package com.logabit.pipeforce.cli.service;
+
+import com.logabit.pipeforce.common.util.FileUtil;
+import com.logabit.pipeforce.common.util.JsonUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects timings and throughput of a single publish: The duration of each phase, the time spent for mime type
+ * detection and encoding, the latency of each request and the bytes sent.
+ * <p>
+ * Phases are recorded by the calling thread only. All other values can be recorded from multiple threads at the
+ * same time.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PublishStats {
+
+    public static final String REPORT_FILE_NAME = "publish.stats.json";
+
+    public static final String PHASE_SCAN = "scan";
+
+    public static final String PHASE_PLAN = "plan";
+
+    public static final String PHASE_PUBLISH = "publish";
+
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+    private final LongAdder mimeDetectionNanos = new LongAdder();
+
+    private final LongAdder encodingNanos = new LongAdder();
+
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final List<Long> requestNanos = Collections.synchronizedList(new ArrayList<>());
+
+    private int files;
+
+    private int published;
+
+    private int failed;
+
+    /**
+     * Adds the time elapsed since the given start to the given phase.
+     *
+     * @param phase
+     * @param startNanos The start as returned by {@link System#nanoTime()}.
+     */
+    public void addPhase(String phase, long startNanos) {
+        phaseNanos.merge(phase, System.nanoTime() - startNanos, Long::sum);
+    }
+
+    public void addMimeDetection(long startNanos) {
+        mimeDetectionNanos.add(System.nanoTime() - startNanos);
+    }
+
+    public void addEncoding(long startNanos) {
+        encodingNanos.add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a single request to the server.
+     *
+     * @param startNanos The start of the request as returned by {@link System#nanoTime()}.
+     * @param bytes      The number of bytes sent with the request.
+     */
+    public void addRequest(long startNanos, long bytes) {
+        requestNanos.add(System.nanoTime() - startNanos);
+        bytesSent.add(bytes);
+    }
+
+    public void setCounters(int files, int published, int failed) {
+        this.files = files;
+        this.published = published;
+        this.failed = failed;
+    }
+
+    /**
+     * Returns the latency in milliseconds which the given percentage of requests didn't exceed (nearest rank).
+     *
+     * @param percentile For example 95 for p95.
+     * @return The latency or 0 in case no request was recorded.
+     */
+    public double getRequestLatencyPercentile(double percentile) {
+
+        List<Long> sorted;
+        synchronized (requestNanos) {
+            sorted = new ArrayList<>(requestNanos);
+        }
+
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return toMillis(sorted.get(Math.max(rank, 1) - 1));
+    }
+
+    /**
+     * @return The number of published files per second during the publish phase.
+     */
+    public double getFilesPerSecond() {
+
+        Long nanos = phaseNanos.get(PHASE_PUBLISH);
+        if (nanos == null || nanos == 0) {
+            return 0;
+        }
+
+        return published / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public int getRequestCount() {
+        return requestNanos.size();
+    }
+
+    /**
+     * @return All values of this stats as map, ready to be written as JSON. Durations are in milliseconds.
+     */
+    public Map<String, Object> toMap() {
+
+        Map<String, Object> phases = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+            phases.put(phase.getKey(), toMillis(phase.getValue()));
+        }
+
+        Map<String, Object> requests = new LinkedHashMap<>();
+        requests.put("count", getRequestCount());
+        requests.put("p50", getRequestLatencyPercentile(50));
+        requests.put("p95", getRequestLatencyPercentile(95));
+        requests.put("p99", getRequestLatencyPercentile(99));
+        requests.put("max", getRequestLatencyPercentile(100));
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("timestamp", System.currentTimeMillis());
+        map.put("files", files);
+        map.put("published", published);
+        map.put("failed", failed);
+        map.put("phases", phases);
+        map.put("mimeDetection", toMillis(mimeDetectionNanos.sum()));
+        map.put("encoding", toMillis(encodingNanos.sum()));
+        map.put("requests", requests);
+        map.put("bytesSent", getBytesSent());
+        map.put("filesPerSecond", round(getFilesPerSecond()));
+        return map;
+    }
+
+    /**
+     * @return A human readable summary of this stats.
+     */
+    public String toText() {
+
+        StringBuilder text = new StringBuilder("Stats:");
+
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+            text.append("\n  Phase ").append(phase.getKey()).append(": ").append(toMillis(phase.getValue()))
+                    .append(" ms");
+        }
+
+        text.append("\n  Mime type detection: ").append(toMillis(mimeDetectionNanos.sum())).append(" ms");
+        text.append("\n  Encoding: ").append(toMillis(encodingNanos.sum())).append(" ms");
+        text.append("\n  Requests: ").append(getRequestCount())
+                .append(" | p50: ").append(getRequestLatencyPercentile(50)).append(" ms")
+                .append(" | p95: ").append(getRequestLatencyPercentile(95)).append(" ms")
+                .append(" | p99: ").append(getRequestLatencyPercentile(99)).append(" ms");
+        text.append("\n  Sent: ").append(getBytesSent()).append(" bytes");
+        text.append("\n  Throughput: ").append(round(getFilesPerSecond())).append(" files/sec");
+
+        return text.toString();
+    }
+
+    /**
+     * Writes this stats as JSON report into the given folder.
+     *
+     * @param folder
+     * @return The report file.
+     */
+    public File save(File folder) {
+
+        File reportFile = new File(folder, REPORT_FILE_NAME);
+        FileUtil.saveStringToFile(JsonUtil.objectToJsonString(toMap()), reportFile);
+        return reportFile;
+    }
+
+    private static double toMillis(long nanos) {
+        return round(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,369 @@
+package com.logabit.pipeforce.cli.service;
+
+import com.logabit.pipeforce.cli.CliException;
+import org.springframework.util.AntPathMatcher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A local copy of the keys of all remote properties of a namespace, together with their type and last update.
+ * Used to match patterns and complete paths without asking the server.
+ * <p>
+ * The index is stored as text file with one line per key, sorted by key, inside the folder {@link #FOLDER_NAME} of
+ * the .pipeforce folder. There is one file per server and namespace. The first line contains the time of the last
+ * refresh, the time of the last full refresh and the high-water mark: The latest update of all keys. A refresh
+ * only needs the keys updated since the high-water mark. Deleted keys are only noticed by a full refresh.
+ * <p>
+ * Besides refreshes, keys changed by this CLI are updated directly: Deleted keys are removed, keys received by a get
+ * or sent by a publish are added, but without moving the high-water mark. Changes by others are only noticed by the
+ * next refresh, so the index can be stale until then.
+ * <p>
+ * Keys are relative to the namespace, for example global/app/myapp/pipeline/foo.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class RemoteIndex {
+
+    public static final String FOLDER_NAME = "remote-index";
+
+    private static final String HEADER = "#pipeforce-remote-index";
+
+    private static final String SEPARATOR = "\t";
+
+    private static final AntPathMatcher MATCHER = new AntPathMatcher();
+
+    private final File file;
+
+    private final NavigableMap<String, Entry> entries = new TreeMap<>();
+
+    private long refreshed;
+
+    private long fullRefreshed;
+
+    private long highWaterMark;
+
+    private boolean loaded;
+
+    public RemoteIndex(File pipeforceFolder, String host, String namespace) {
+        this.file = new File(new File(pipeforceFolder, FOLDER_NAME), toFileName(host) + "_" + toFileName(namespace));
+    }
+
+    /**
+     * @return True in case the index has been refreshed at least once.
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The time of the last refresh or 0 in case the index was never refreshed.
+     */
+    public long getRefreshed() {
+        load();
+        return refreshed;
+    }
+
+    /**
+     * @return The time of the last full refresh or 0 in case the index was never refreshed.
+     */
+    public long getFullRefreshed() {
+        load();
+        return fullRefreshed;
+    }
+
+    /**
+     * @return The latest update of all keys. Properties updated since then are not in the index yet.
+     */
+    public long getHighWaterMark() {
+        load();
+        return highWaterMark;
+    }
+
+    /**
+     * Adds or replaces the given key.
+     *
+     * @param key
+     * @param type
+     * @param updated The last update or creation of the property.
+     */
+    public void put(String key, String type, long updated) {
+
+        load();
+        entries.put(key, new Entry(key, type, updated));
+        highWaterMark = Math.max(highWaterMark, updated);
+    }
+
+    /**
+     * Adds or replaces the given key without moving the high-water mark. Used for keys changed or received outside
+     * of a refresh, since keys updated before them could still be missing in the index.
+     *
+     * @param key
+     * @param type
+     * @param updated The last update or creation of the property.
+     */
+    public void update(String key, String type, long updated) {
+
+        load();
+        entries.put(key, new Entry(key, type, updated));
+    }
+
+    /**
+     * Removes all keys matching the given pattern.
+     *
+     * @param pattern
+     */
+    public void remove(String pattern) {
+
+        Iterator<String> keys = candidates(pattern).keySet().iterator();
+        while (keys.hasNext()) {
+            if (MATCHER.match(pattern, keys.next())) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all keys. Used before a full refresh.
+     */
+    public void clear() {
+        load();
+        entries.clear();
+        highWaterMark = 0;
+    }
+
+    /**
+     * Marks the index as refreshed at the given time.
+     *
+     * @param time
+     * @param full True in case all keys have been refreshed.
+     */
+    public void setRefreshed(long time, boolean full) {
+
+        load();
+        refreshed = time;
+        if (full) {
+            fullRefreshed = time;
+        }
+    }
+
+    /**
+     * @param pattern An ant style pattern like global/app/myapp/**
+     * @return All entries matching the given pattern, sorted by key.
+     */
+    public List<Entry> match(String pattern) {
+
+        List<Entry> matches = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : candidates(pattern).entrySet()) {
+            if (MATCHER.match(pattern, entry.getKey())) {
+                matches.add(entry.getValue());
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the next path segments of all keys starting with the given prefix. A segment which has children ends
+     * with a slash. For example the prefix global/app/my returns global/app/myapp/ and global/app/myapp2/.
+     * <p>
+     * Keys sharing a segment are skipped by a single lookup in the sorted index, so this is fast even for
+     * folders with many children.
+     *
+     * @param prefix
+     * @return The completions, sorted.
+     */
+    public List<String> complete(String prefix) {
+
+        load();
+
+        List<String> completions = new ArrayList<>();
+        String key = entries.ceilingKey(prefix);
+
+        while (key != null && key.startsWith(prefix)) {
+
+            int slash = key.indexOf('/', prefix.length());
+            if (slash < 0) {
+                completions.add(key);
+                key = entries.higherKey(key);
+                continue;
+            }
+
+            String folder = key.substring(0, slash + 1);
+            completions.add(folder);
+
+            // Skip all keys inside this folder: '0' is the char after '/'
+            key = entries.ceilingKey(key.substring(0, slash) + '0');
+        }
+
+        return completions;
+    }
+
+    public int size() {
+        load();
+        return entries.size();
+    }
+
+    /**
+     * Writes the index. The file is written into a temp file first and then moved, so it is never left half
+     * written.
+     */
+    public void save() {
+
+        load();
+
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8)) {
+
+                writer.write(HEADER + SEPARATOR + refreshed + SEPARATOR + fullRefreshed + SEPARATOR + highWaterMark);
+                writer.newLine();
+
+                for (Entry entry : entries.values()) {
+                    writer.write(entry.key + SEPARATOR + (entry.type == null ? "" : entry.type) + SEPARATOR +
+                            entry.updated);
+                    writer.newLine();
+                }
+            }
+
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new CliException("Could not write remote index " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the part of the index which can contain matches of the given pattern: All keys starting with the
+     * part of the pattern before the first wildcard.
+     *
+     * @param pattern
+     * @return
+     */
+    private NavigableMap<String, Entry> candidates(String pattern) {
+
+        load();
+
+        int wildcard = pattern.length();
+        for (char c : new char[]{'*', '?', '{'}) {
+            int index = pattern.indexOf(c);
+            if (index >= 0) {
+                wildcard = Math.min(wildcard, index);
+            }
+        }
+
+        String prefix = pattern.substring(0, wildcard);
+        if (prefix.isEmpty()) {
+            return entries;
+        }
+
+        // All keys starting with prefix: The char after the last one of the prefix is the exclusive end
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+        return entries.subMap(prefix, true, end, false);
+    }
+
+    private void load() {
+
+        if (loaded) {
+            return;
+        }
+
+        loaded = true;
+
+        if (!file.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+
+            String[] header = reader.readLine().split(SEPARATOR);
+            if (header.length != 4 || !HEADER.equals(header[0])) {
+                throw new IOException("Unknown header");
+            }
+
+            refreshed = Long.parseLong(header[1]);
+            fullRefreshed = Long.parseLong(header[2]);
+            highWaterMark = Long.parseLong(header[3]);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                String[] split = line.split(SEPARATOR, -1);
+                if (split.length != 3) {
+                    continue; // Incomplete line
+                }
+
+                String type = split[1].isEmpty() ? null : split[1];
+                entries.put(split[0], new Entry(split[0], type, Long.parseLong(split[2])));
+            }
+        } catch (IOException | RuntimeException e) {
+
+            // A broken index only costs a full refresh
+            entries.clear();
+            refreshed = 0;
+            fullRefreshed = 0;
+            highWaterMark = 0;
+        }
+    }
+
+    private static String toFileName(String part) {
+        return (part + "").replaceAll("[^A-Za-z0-9.-]", "_");
+    }
+
+    /**
+     * A single key of the index.
+     */
+    public static class Entry {
+
+        private final String key;
+
+        private final String type;
+
+        private final long updated;
+
+        private Entry(String key, String type, long updated) {
+            this.key = key;
+            this.type = type;
+            this.updated = updated;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return The last update or creation of the property.
+         */
+        public long getUpdated() {
+            return updated;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.logabit.pipeforce.cli;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the {@link AdaptiveRateLimiter}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class AdaptiveRateLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10000);
+
+    @Test
+    public void testIncreaseWhileFast() {
+
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(1000);
+        Assert.assertEquals(AdaptiveRateLimiter.INITIAL_RATE, limiter.getRate(), 0.001);
+
+        // Slow start: Multiplicative increase
+        for (int i = 0; i < 10; i++) {
+            limiter.onResponse(FAST);
+        }
+
+        Assert.assertEquals(AdaptiveRateLimiter.INITIAL_RATE * Math.pow(AdaptiveRateLimiter.SLOW_START_FACTOR, 10),
+                limiter.getRate(), 0.001);
+        Assert.assertEquals(100, limiter.getLatencyMillis());
+
+        for (int i = 0; i < 1000; i++) {
+            limiter.onResponse(FAST);
+        }
+
+        Assert.assertEquals(AdaptiveRateLimiter.MAX_RATE, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void testDecreaseWhileSlow() {
+
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(1000);
+        for (int i = 0; i < 10; i++) {
+            limiter.onResponse(FAST);
+        }
+
+        double rate = limiter.getRate();
+
+        // Average latency above target -> Decrease once, the other slow responses belong to the same window
+        for (int i = 0; i < 5; i++) {
+            limiter.onResponse(SLOW);
+        }
+
+        Assert.assertEquals(rate * AdaptiveRateLimiter.SLOW_DECREASE_FACTOR, limiter.getRate(), 0.001);
+
+        // After slow start, fast responses increase additively
+        rate = limiter.getRate();
+        for (int i = 0; i < 10; i++) {
+            limiter.onResponse(FAST);
+        }
+
+        Assert.assertTrue(limiter.getRate() > rate);
+        Assert.assertTrue(limiter.getRate() < rate + 10 * AdaptiveRateLimiter.ADDITIVE_INCREASE);
+    }
+
+    @Test
+    public void testOverload() {
+
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(1000);
+        limiter.onOverload();
+        Assert.assertEquals(AdaptiveRateLimiter.INITIAL_RATE * AdaptiveRateLimiter.OVERLOAD_DECREASE_FACTOR,
+                limiter.getRate(), 0.001);
+
+        // Overloads during the same latency window count once
+        limiter.onOverload();
+        Assert.assertEquals(AdaptiveRateLimiter.INITIAL_RATE * AdaptiveRateLimiter.OVERLOAD_DECREASE_FACTOR,
+                limiter.getRate(), 0.001);
+
+        Assert.assertTrue(AdaptiveRateLimiter.isOverload(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS)));
+        Assert.assertTrue(AdaptiveRateLimiter.isOverload(
+                new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE)));
+        Assert.assertTrue(AdaptiveRateLimiter.isOverload(
+                new ResourceAccessException("Connection refused", new ConnectException("Connection refused"))));
+
+        // The server might have processed the request -> Not retryable
+        Assert.assertFalse(AdaptiveRateLimiter.isOverload(
+                new ResourceAccessException("Read timed out", new SocketTimeoutException("Read timed out"))));
+        Assert.assertFalse(AdaptiveRateLimiter.isOverload(new HttpServerErrorException(HttpStatus.BAD_GATEWAY)));
+        Assert.assertFalse(AdaptiveRateLimiter.isOverload(
+                new HttpServerErrorException(HttpStatus.GATEWAY_TIMEOUT)));
+        Assert.assertFalse(AdaptiveRateLimiter.isOverload(
+                new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR)));
+        Assert.assertFalse(AdaptiveRateLimiter.isOverload(new HttpClientErrorException(HttpStatus.BAD_REQUEST)));
+        Assert.assertFalse(AdaptiveRateLimiter.isOverload(new CliException("Other")));
+    }
+
+    @Test
+    public void testAcquire() throws Exception {
+
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(1000);
+
+        // Initial rate is 2 per second -> The third request has to wait about one second
+        long start = System.nanoTime();
+        limiter.acquire();
+        limiter.acquire();
+        limiter.acquire();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertTrue("Elapsed: " + elapsed, elapsed >= 900 && elapsed < 2000);
+    }
+
+    @Test(expected = CliException.class)
+    public void testInvalidTargetLatency() {
+        new AdaptiveRateLimiter(0);
+    }
+}
@@ -0,0 +1,107 @@
+package com.logabit.pipeforce.cli;
+
+import com.logabit.pipeforce.cli.LocalPatternMatcher.MatchedFile;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the {@link LocalPatternMatcher}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class LocalPatternMatcherTest {
+
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private String home;
+
+    @Before
+    public void setUp() throws IOException {
+
+        File properties = tmpFolder.newFolder("properties");
+        home = properties.getAbsolutePath().replace('\\', '/');
+
+        createFile("global/app/myapp/pipeline/b.pi.yaml", "pipeline:");
+        createFile("global/app/myapp/pipeline/a.pi.yaml", "pipeline:");
+        createFile("global/app/myapp/form/person.json", "{}");
+        createFile("global/app/other/pipeline/c.pi.yaml", "pipeline:");
+        createFile("global/app/other/data/c.json", "{\"foo\": \"bar\"}");
+    }
+
+    @Test
+    public void testMatchAll() throws Exception {
+
+        List<String> paths = match(home + "/**");
+        Assert.assertEquals(5, paths.size());
+        Assert.assertEquals("global/app/myapp/form/person.json", paths.get(0));
+        Assert.assertEquals("global/app/myapp/pipeline/a.pi.yaml", paths.get(1));
+        Assert.assertEquals("global/app/myapp/pipeline/b.pi.yaml", paths.get(2));
+        Assert.assertEquals("global/app/other/data/c.json", paths.get(3));
+        Assert.assertEquals("global/app/other/pipeline/c.pi.yaml", paths.get(4));
+    }
+
+    @Test
+    public void testMatchWildcardInBetween() throws Exception {
+
+        List<String> paths = match(home + "/global/app/*/pipeline/*");
+        Assert.assertEquals(3, paths.size());
+        Assert.assertEquals("global/app/myapp/pipeline/a.pi.yaml", paths.get(0));
+        Assert.assertEquals("global/app/myapp/pipeline/b.pi.yaml", paths.get(1));
+        Assert.assertEquals("global/app/other/pipeline/c.pi.yaml", paths.get(2));
+
+        paths = match(home + "/global/app/other/**/*.json");
+        Assert.assertEquals(1, paths.size());
+        Assert.assertEquals("global/app/other/data/c.json", paths.get(0));
+    }
+
+    @Test
+    public void testMatchSingleFile() throws Exception {
+
+        List<MatchedFile> matches = new LocalPatternMatcher(home + "/global/app/other/data/c.json").match();
+        Assert.assertEquals(1, matches.size());
+        Assert.assertEquals(14, matches.get(0).getSize());
+        Assert.assertEquals(matches.get(0).getFile().lastModified(), matches.get(0).getLastModified());
+
+        Assert.assertEquals(0, match(home + "/global/app/other/data/notExisting.json").size());
+        Assert.assertEquals(0, match(home + "/global/app/notExisting/**").size());
+    }
+
+    @Test
+    public void testRootFolder() {
+
+        Assert.assertEquals("/foo/properties/global/app",
+                new LocalPatternMatcher("/foo/properties/global/app/*/pipeline/*").getRootFolder());
+        Assert.assertEquals("/foo/properties", new LocalPatternMatcher("/foo/properties/**").getRootFolder());
+        Assert.assertEquals("C:/", new LocalPatternMatcher("C:\\**").getRootFolder());
+    }
+
+    private List<String> match(String pattern) throws IOException {
+
+        List<String> paths = new ArrayList<>();
+        for (MatchedFile matchedFile : new LocalPatternMatcher(pattern).match()) {
+            String path = matchedFile.getFile().getAbsolutePath().replace('\\', '/');
+            paths.add(path.substring(home.length() + 1));
+        }
+
+        return paths;
+    }
+
+    private void createFile(String path, String content) throws IOException {
+
+        File file = new File(home, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,78 @@
+package com.logabit.pipeforce.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Tests the {@link PropertyImportBody}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PropertyImportBodyTest {
+
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testStreamedValues() throws Exception {
+
+        byte[] binary = new byte[100000];
+        new Random(42).nextBytes(binary);
+        File binaryFile = tmpFolder.newFile("image.png");
+        Files.write(binaryFile.toPath(), binary);
+
+        File textFile = tmpFolder.newFile("pipeline.pi.yaml");
+        Files.write(textFile.toPath(), "pipeline:\n  - log:\n      message: \"Hällo\"".getBytes(StandardCharsets.UTF_8));
+
+        JsonNode node;
+        File tempFile;
+        try (PropertyImportBody body = new PropertyImportBody()) {
+
+            body.add("global/app/myapp/image", "image/png;encoding=base64", null, binaryFile, true);
+            body.add("global/app/myapp/pipeline/pipeline", "application/yaml", null, textFile, false);
+            body.add("global/app/myapp/data/person", "application/json", "abc", "{\"name\":\"Max\"}");
+            Assert.assertEquals(3, body.size());
+
+            Resource resource = body.toResource();
+            tempFile = resource.getFile();
+            try (InputStream is = resource.getInputStream()) {
+                node = new ObjectMapper().readTree(is);
+            }
+        }
+
+        Assert.assertFalse(tempFile.exists());
+        Assert.assertEquals(3, node.size());
+
+        Assert.assertEquals("global/app/myapp/image", node.get(0).get("path").textValue());
+        Assert.assertEquals("image/png;encoding=base64", node.get(0).get("type").textValue());
+        Assert.assertNull(node.get(0).get("uuid"));
+        Assert.assertArrayEquals(binary, Base64.getDecoder().decode(node.get(0).get("value").textValue()));
+
+        Assert.assertEquals("pipeline:\n  - log:\n      message: \"Hällo\"", node.get(1).get("value").textValue());
+
+        Assert.assertEquals("abc", node.get(2).get("uuid").textValue());
+        Assert.assertEquals("{\"name\":\"Max\"}", node.get(2).get("value").textValue());
+    }
+
+    @Test(expected = CliException.class)
+    public void testAddAfterFinish() {
+
+        try (PropertyImportBody body = new PropertyImportBody()) {
+            body.toResource();
+            body.add("global/app/myapp/foo", "text/plain", null, "bar");
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.logabit.pipeforce.cli;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tests the {@link PropertyPage}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PropertyPageTest {
+
+    @Test
+    public void testReadProperties() {
+
+        String json = "[" +
+                "{\"path\": \"/pipeforce/enterprise/global/app/myapp/pipeline/prop1\", " +
+                "\"uuid\": \"a656bc2d\", \"value\": \"pipeline: ččč\", \"attributes\": {\"foo\": [1, 2]}, " +
+                "\"type\": \"application/yaml; type=pipeline\", \"created\": 1613460723183, \"updated\": null}," +
+                "{\"path\": \"/pipeforce/enterprise/global/app/myapp/data/empty\", \"value\": null, " +
+                "\"type\": \"application/json\", \"created\": 1613460723183, \"updated\": 1613460723360}" +
+                "]";
+
+        try (PropertyPage page = read(json)) {
+
+            Assert.assertEquals(2, page.size());
+            Assert.assertEquals(json.getBytes(StandardCharsets.UTF_8).length, page.getBytes());
+
+            PropertyPage.Property prop1 = page.getProperties().get(0);
+            Assert.assertEquals("/pipeforce/enterprise/global/app/myapp/pipeline/prop1", prop1.getPath());
+            Assert.assertEquals("a656bc2d", prop1.getUuid());
+            Assert.assertEquals("application/yaml; type=pipeline", prop1.getType());
+            Assert.assertEquals(1613460723183L, prop1.getCreated());
+            Assert.assertEquals(0, prop1.getUpdated());
+            Assert.assertTrue(prop1.hasValue());
+
+            PropertyPage.Property prop2 = page.getProperties().get(1);
+            Assert.assertEquals(1613460723360L, prop2.getUpdated());
+            Assert.assertFalse(prop2.hasValue());
+        }
+    }
+
+    @Test
+    public void testWriteValue() {
+
+        byte[] binary = new byte[100000];
+        new Random(42).nextBytes(binary);
+
+        String json = "[" +
+                "{\"path\": \"text\", \"value\": \"pipeline: ččč\\nfoo: \\\"bar\\\"\", " +
+                "\"type\": \"application/yaml; type=pipeline\"}," +
+                "{\"path\": \"binary\", \"value\": \"" + Base64.getMimeEncoder().encodeToString(binary)
+                .replace("\r\n", "\\r\\n") + "\", \"type\": \"image/png; encoding=base64\"}," +
+                "{\"path\": \"empty\", \"value\": null, \"type\": \"application/json\"}," +
+                "{\"path\": \"other\", \"type\": \"application/json\", \"value\": \"foo\"}" +
+                "]";
+
+        Map<String, byte[]> outputs = new ConcurrentHashMap<>();
+
+        try (PropertyPage page = read(json)) {
+
+            // Values can be written in any order, from multiple threads
+            List<PropertyPage.Property> properties = new ArrayList<>(page.getProperties());
+            Collections.reverse(properties);
+            properties.parallelStream().forEach(property -> {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                page.writeValue(property, bos);
+                outputs.put(property.getPath(), bos.toByteArray());
+            });
+        }
+
+        Assert.assertEquals(4, outputs.size());
+        Assert.assertEquals("pipeline: ččč\nfoo: \"bar\"", new String(outputs.get("text"), StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(binary, outputs.get("binary"));
+        Assert.assertEquals(0, outputs.get("empty").length);
+        Assert.assertEquals("foo", new String(outputs.get("other"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWriteTextValue() throws Exception {
+
+        // Escapes, including unicode escapes of a surrogate pair, spread over multiple chunks
+        StringBuilder expected = new StringBuilder();
+        StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            expected.append("é\t\"/\\\u0001\uD83D\uDE00");
+            escaped.append("\\u00e9\\t\\\"\\/\\\\\\u0001\\ud83d\\ude00");
+        }
+
+        try (PropertyPage page = read("[{\"path\": \"text\", \"value\": \"" + escaped + "\"}]")) {
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            page.writeValue(page.getProperties().get(0), bos);
+            Assert.assertEquals(expected.toString(), bos.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testRetain() throws Exception {
+
+        PropertyPage page = read("[{\"path\": \"foo\", \"value\": \"bar\"}]");
+        page.retain();
+        page.close();
+
+        // Still retained -> Value can be written
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        page.writeValue(page.getProperties().get(0), bos);
+        Assert.assertEquals("bar", bos.toString("UTF-8"));
+
+        page.close();
+
+        try {
+            page.writeValue(page.getProperties().get(0), new ByteArrayOutputStream());
+            Assert.fail("Temp file must be deleted");
+        } catch (CliException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testHasValues() {
+
+        try (PropertyPage page = read("[{\"path\": \"foo\", \"value\": null}, {\"path\": \"bar\"}]")) {
+            Assert.assertFalse(page.hasValues());
+        }
+
+        // Server ignored the fields parameter
+        try (PropertyPage page = read("[{\"path\": \"foo\"}, {\"path\": \"bar\", \"value\": \"baz\"}]")) {
+            Assert.assertTrue(page.hasValues());
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+
+        try (PropertyPage page = read("[]")) {
+            Assert.assertEquals(0, page.size());
+        }
+
+        try (PropertyPage page = read("")) {
+            Assert.assertEquals(0, page.size());
+        }
+    }
+
+    @Test(expected = CliException.class)
+    public void testNoArray() {
+        read("{\"error\": \"foo\"}");
+    }
+
+    private PropertyPage read(String json) {
+        return PropertyPage.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
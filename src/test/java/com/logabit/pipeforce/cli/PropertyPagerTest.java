@@ -0,0 +1,197 @@
+package com.logabit.pipeforce.cli;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the {@link PropertyPager}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PropertyPagerTest {
+
+    @Test
+    public void testGrowsForSmallFastPages() {
+
+        PropertyPager pager = new PropertyPager();
+        Assert.assertEquals(PropertyPager.DEFAULT_PAGE_SIZE, pager.getPageSize());
+
+        // 100 small properties in 10 ms -> Grows, but at most by factor 2 per page
+        pager.record(100, 100 * 200, TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(200, pager.getPageSize());
+
+        for (int i = 0; i < 20; i++) {
+            pager.record(pager.getPageSize(), pager.getPageSize() * 200L, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        Assert.assertEquals(PropertyPager.MAX_PAGE_SIZE, pager.getPageSize());
+    }
+
+    @Test
+    public void testShrinksForLargePages() {
+
+        PropertyPager pager = new PropertyPager();
+
+        // 100 properties of 1 MB each -> Shrinks immediately to the target payload, but not below the min
+        pager.record(100, 100 * 1024 * 1024, TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertEquals(PropertyPager.MIN_PAGE_SIZE, pager.getPageSize());
+
+        // 100 properties of 100 KB each -> 4 MB target = 40 properties
+        pager = new PropertyPager();
+        pager.record(100, 100 * 100 * 1024, TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertEquals(40, pager.getPageSize());
+    }
+
+    @Test
+    public void testShrinksForSlowPages() {
+
+        PropertyPager pager = new PropertyPager();
+
+        // 100 small properties in 10 sec -> 2 sec target = 20 properties
+        pager.record(100, 100 * 200, TimeUnit.SECONDS.toNanos(10));
+        Assert.assertEquals(20, pager.getPageSize());
+    }
+
+    @Test
+    public void testFixedPageSize() {
+
+        PropertyPager pager = new PropertyPager(7);
+        pager.record(7, 7 * 200, TimeUnit.MILLISECONDS.toNanos(1));
+        Assert.assertEquals(7, pager.getPageSize());
+        Assert.assertTrue(pager.isFixed());
+    }
+
+    @Test(expected = CliException.class)
+    public void testFixedPageSizeTooLarge() {
+        new PropertyPager(PropertyPager.MAX_PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void testFetchAll() {
+
+        PropertyPager pager = new PropertyPager(10);
+        List<String> requests = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+
+        // 25 properties -> 3 pages, last one is short, followed by an empty one
+        pager.fetchAll((offset, limit) -> {
+            requests.add(offset + ":" + limit);
+            return createProperties(Math.max(0, Math.min(limit, 25 - offset)));
+        }, page -> pageSizes.add(page.size()));
+
+        Assert.assertEquals(4, requests.size());
+        Assert.assertEquals("0:10", requests.get(0));
+        Assert.assertEquals("10:10", requests.get(1));
+        Assert.assertEquals("20:10", requests.get(2));
+        Assert.assertEquals("25:10", requests.get(3));
+        Assert.assertEquals(3, pageSizes.size());
+        Assert.assertEquals(5, (int) pageSizes.get(2));
+    }
+
+    @Test
+    public void testFetchAllServerCapsLimit() {
+
+        PropertyPager pager = new PropertyPager(10);
+        List<String> paths = new ArrayList<>();
+
+        // Server returns at most 3 properties per page -> Short pages must not stop fetching
+        pager.fetchAll((offset, limit) -> createProperties(offset, Math.max(0, Math.min(3, 25 - offset))),
+                page -> page.getProperties().forEach(property -> paths.add(property.getPath())));
+
+        Assert.assertEquals(25, paths.size());
+        Assert.assertTrue(paths.get(24).endsWith("prop24"));
+    }
+
+    @Test
+    public void testFetchWhile() {
+
+        PropertyPager pager = new PropertyPager(10);
+        List<String> requests = new ArrayList<>();
+
+        // Consumer stops after the second page, for example since the output has been closed
+        pager.fetchWhile((offset, limit) -> {
+            requests.add(offset + ":" + limit);
+            return createProperties(offset, limit);
+        }, page -> requests.size() < 2);
+
+        Assert.assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void testFetchAllEmpty() {
+
+        PropertyPager pager = new PropertyPager();
+        List<PropertyPage> pages = new ArrayList<>();
+
+        pager.fetchAll((offset, limit) -> null, pages::add);
+        pager.fetchAll((offset, limit) -> createProperties(0), pages::add);
+
+        Assert.assertEquals(0, pages.size());
+    }
+
+    @Test
+    public void testDrain() {
+
+        PropertyPager pager = new PropertyPager(10);
+        List<String> requests = new ArrayList<>();
+        int[] remaining = new int[]{25};
+
+        // Each consumed page is deleted -> Next page starts at offset 0 again
+        pager.drain((offset, limit) -> {
+            requests.add(offset + ":" + limit);
+            return createProperties(25 - remaining[0], Math.min(limit, remaining[0]));
+        }, page -> remaining[0] -= page.size());
+
+        Assert.assertEquals(4, requests.size());
+        Assert.assertEquals("0:10", requests.get(0));
+        Assert.assertEquals("0:10", requests.get(2));
+        Assert.assertEquals(0, remaining[0]);
+    }
+
+    @Test
+    public void testDrainServerCapsLimit() {
+
+        PropertyPager pager = new PropertyPager(10);
+        int[] remaining = new int[]{25};
+
+        // Server returns at most 3 properties per page -> Short pages must not stop draining
+        pager.drain((offset, limit) -> createProperties(25 - remaining[0], Math.min(3, remaining[0])),
+                page -> remaining[0] -= page.size());
+
+        Assert.assertEquals(0, remaining[0]);
+    }
+
+    @Test(expected = CliException.class)
+    public void testDrainNotDeleted() {
+
+        PropertyPager pager = new PropertyPager(10);
+        pager.drain((offset, limit) -> createProperties(0, limit), page -> {
+        });
+    }
+
+    private PropertyPage createProperties(int count) {
+        return createProperties(0, count);
+    }
+
+    private PropertyPage createProperties(int start, int count) {
+
+        ArrayNode page = JsonNodeFactory.instance.arrayNode();
+        for (int i = start; i < start + count; i++) {
+            ObjectNode property = page.addObject();
+            property.put("path", "/pipeforce/enterprise/global/app/myapp/pipeline/prop" + i);
+            property.put("value", "someValue" + i);
+        }
+
+        return PropertyPage.read(new ByteArrayInputStream(page.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+}
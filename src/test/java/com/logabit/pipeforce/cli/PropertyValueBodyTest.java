@@ -0,0 +1,66 @@
+package com.logabit.pipeforce.cli;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Tests the {@link PropertyValueBody}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PropertyValueBodyTest {
+
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testBinaryValue() throws Exception {
+
+        byte[] binary = new byte[100000];
+        new Random(42).nextBytes(binary);
+        File binaryFile = tmpFolder.newFile("image.png");
+        Files.write(binaryFile.toPath(), binary);
+
+        File tempFile;
+        try (PropertyValueBody body = new PropertyValueBody(binaryFile, true)) {
+
+            Resource resource = body.toResource();
+            tempFile = resource.getFile();
+            Assert.assertNotEquals(binaryFile, tempFile);
+
+            byte[] encoded = Files.readAllBytes(tempFile.toPath());
+            Assert.assertEquals(encoded.length, body.getBytes());
+            Assert.assertArrayEquals(binary, Base64.getDecoder().decode(encoded));
+        }
+
+        // Temp file is deleted, the source file is kept
+        Assert.assertFalse(tempFile.exists());
+        Assert.assertTrue(binaryFile.exists());
+    }
+
+    @Test
+    public void testTextValue() throws Exception {
+
+        File textFile = tmpFolder.newFile("pipeline.pi.yaml");
+        Files.write(textFile.toPath(), "pipeline:\n  - log:\n      message: \"Hällo\"".getBytes(StandardCharsets.UTF_8));
+
+        try (PropertyValueBody body = new PropertyValueBody(textFile, false)) {
+
+            // Sent as it is, without a copy
+            Assert.assertEquals(textFile, body.toResource().getFile());
+            Assert.assertEquals(textFile.length(), body.getBytes());
+        }
+
+        Assert.assertTrue(textFile.exists());
+    }
+}
@@ -1,14 +1,20 @@
 package com.logabit.pipeforce.cli.command;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.PropertyPage;
 import com.logabit.pipeforce.cli.config.CliConfig;
 import com.logabit.pipeforce.cli.service.PublishCliService;
 import com.logabit.pipeforce.common.command.ICommandParams;
 import com.logabit.pipeforce.common.command.stub.PropertyListParams;
 import com.logabit.pipeforce.common.command.stub.PropertySchemaDeleteParams;
+import com.logabit.pipeforce.common.command.stub.ServerInfoParams;
 import com.logabit.pipeforce.common.net.Request;
 import com.logabit.pipeforce.common.util.JsonUtil;
+import com.logabit.pipeforce.common.util.ListUtil;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -17,8 +23,12 @@ import org.junit.contrib.java.lang.system.TextFromStandardInputStream;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.contrib.java.lang.system.TextFromStandardInputStream.emptyStandardInputStream;
@@ -77,9 +87,10 @@ public class DeleteCliCommandTest extends BaseRepoAwareCliCommandTest {
                 "  }\n" +
                 "]";
 
-        ArrayNode foundPropsNode = (ArrayNode) JsonUtil.jsonStringToJsonNode(foundProperties);
+        PropertyPage foundPropsPage = PropertyPage.read(
+                new ByteArrayInputStream(foundProperties.getBytes(StandardCharsets.UTF_8)));
     //  when(resolver.command(any(), any())).thenReturn(foundPropsNode);
-        when(resolver.command(any(), any())).thenReturn(foundPropsNode);
+        when(resolver.command(any(), any())).thenReturn(foundPropsPage);
 
         DeleteCliCommand deleteCmd = (DeleteCliCommand) cliContext.createCommandInstance("delete");
         deleteCmd.call(new CommandArgs("global/app/myapp/pipeline/**"));
@@ -120,6 +131,70 @@ public class DeleteCliCommandTest extends BaseRepoAwareCliCommandTest {
         verify(publishCliService, times(1)).save();
     }
 
+    @Test
+    public void testDeletePaged() throws Exception {
+
+        CliConfig.Instance instance = new CliConfig.Instance();
+        instance.setNamespace("enterprise");
+        cliContext.setCurrentInstance(instance);
+
+        mockServerVersion(10, 0, 2);
+
+        systemInMock.provideLines("1"); // Do you want to delete? 1=yes
+
+        // Two full pages of keys only, then a short one and an empty one
+        when(resolver.command(Mockito.isA(PropertyListParams.class), any()))
+                .thenReturn(createKeys(0, 10), createKeys(10, 10), createKeys(20, 5), createKeys(25, 0));
+
+        DeleteCliCommand deleteCmd = (DeleteCliCommand) cliContext.createCommandInstance("delete");
+        deleteCmd.setPageSize(10);
+        deleteCmd.call(new CommandArgs("--serverSide:false", "--parallel:4", "global/app/myapp/pipeline/**"));
+
+        verify(resolver, times(4)).command(Mockito.isA(PropertyListParams.class), any());
+
+        // Deleted pages shift the remaining properties -> Always offset 0
+        for (PropertyListParams listParams : captureCommands(PropertyListParams.class)) {
+            Assert.assertEquals(0, listParams.getParamsMap().get("offset"));
+            Assert.assertEquals(10, listParams.getParamsMap().get("limit"));
+            Assert.assertEquals(PropertyPage.FIELDS_KEYS, listParams.getParamsMap().get(PropertyPage.PARAM_FIELDS));
+        }
+
+        verify(resolver, times(25)).command(Mockito.isA(PropertySchemaDeleteParams.class), any());
+        Assert.assertEquals(25, deleteCmd.getDeletedCounter());
+
+        // Registry entries are removed once per page
+        verify(publishCliService, times(3)).removeAll(any());
+        verify(publishCliService, times(1)).save();
+    }
+
+    @Test
+    public void testDeleteServerSide() throws Exception {
+
+        CliConfig.Instance instance = new CliConfig.Instance();
+        instance.setNamespace("enterprise");
+        cliContext.setCurrentInstance(instance);
+
+        mockServerVersion(10, 0, 2);
+
+        systemInMock.provideLines("1"); // Do you want to delete? 1=yes
+
+        when(resolver.command(Mockito.isA(PropertySchemaDeleteParams.class), any()))
+                .thenReturn(JsonNodeFactory.instance.numberNode(25));
+
+        DeleteCliCommand deleteCmd = (DeleteCliCommand) cliContext.createCommandInstance("delete");
+        deleteCmd.call(new CommandArgs("--serverSide:true", "global/app/myapp/pipeline/**"));
+
+        // The whole pattern is deleted by a single request, nothing is listed
+        verify(resolver, times(1)).command(Mockito.isA(PropertySchemaDeleteParams.class), any());
+        verify(resolver, times(0)).command(Mockito.isA(PropertyListParams.class), any());
+        Assert.assertEquals("/pipeforce/enterprise/global/app/myapp/pipeline/**",
+                captureCommands(PropertySchemaDeleteParams.class).get(0).getParamsMap().get("pattern"));
+        Assert.assertEquals(25, deleteCmd.getDeletedCounter());
+
+        verify(publishCliService, times(1)).removeAll(any());
+        verify(publishCliService, times(1)).save();
+    }
+
     @Test
     public void testDeletePropertyNothingFound() throws Exception {
 
@@ -131,9 +206,10 @@ public class DeleteCliCommandTest extends BaseRepoAwareCliCommandTest {
 
         String foundProperties = "[]"; // No properties found
 
-        ArrayNode foundPropsNode = (ArrayNode) JsonUtil.jsonStringToJsonNode(foundProperties);
+        PropertyPage foundPropsPage = PropertyPage.read(
+                new ByteArrayInputStream(foundProperties.getBytes(StandardCharsets.UTF_8)));
 //        when(resolver.resolve(Request.get().uri("$uri:command:property.list?filter=global/app/myapp/pipeline/mypipe"), ArrayNode.class)).thenReturn(foundPropsNode);
-        when(resolver.command(new PropertyListParams().filter("global/app/myapp/pipeline/mypipe"), ArrayNode.class)).thenReturn(foundPropsNode);
+        when(resolver.command(new PropertyListParams().filter("global/app/myapp/pipeline/mypipe"), PropertyPage.class)).thenReturn(foundPropsPage);
 
         DeleteCliCommand deleteCmd = (DeleteCliCommand) cliContext.createCommandInstance("delete");
         deleteCmd.call(new CommandArgs("global/app/myapp/pipeline/mypipe.pi.yaml"));
@@ -224,4 +300,38 @@ public class DeleteCliCommandTest extends BaseRepoAwareCliCommandTest {
         Assert.assertEquals(1, values.size());
         Assert.assertEquals("global/app/myapp/pipeline/someleaf", values.get(0).getParamsMap().get("filter"));
     }
+
+    private <T> List<T> captureCommands(Class<T> type) {
+
+        ArgumentCaptor<ICommandParams> commandCaptor = ArgumentCaptor.forClass(ICommandParams.class);
+        verify(resolver, Mockito.atLeastOnce()).command(commandCaptor.capture(), any());
+
+        List<T> commands = new ArrayList<>();
+        for (ICommandParams command : commandCaptor.getAllValues()) {
+            if (type.isInstance(command)) {
+                commands.add(type.cast(command));
+            }
+        }
+
+        return commands;
+    }
+
+    private void mockServerVersion(int major, int minor, int bugfix) {
+
+        JsonNode serverInfo = JsonUtil.mapToJsonNode(ListUtil.asMap(
+                "versionMajor", major, "versionMinor", minor, "versionBugfix", bugfix));
+        when(resolver.command(Mockito.isA(ServerInfoParams.class), any())).thenReturn(serverInfo);
+    }
+
+    private PropertyPage createKeys(int start, int count) {
+
+        ArrayNode page = JsonNodeFactory.instance.arrayNode();
+        for (int i = start; i < start + count; i++) {
+            ObjectNode property = page.addObject();
+            property.put("path", "/pipeforce/enterprise/global/app/myapp/pipeline/prop" + i);
+            property.put("type", "application/yaml; type=pipeline");
+        }
+
+        return PropertyPage.read(new ByteArrayInputStream(page.toString().getBytes(StandardCharsets.UTF_8)));
+    }
 }
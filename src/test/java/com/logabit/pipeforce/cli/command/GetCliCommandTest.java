@@ -1,12 +1,19 @@
 package com.logabit.pipeforce.cli.command;
 
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.logabit.pipeforce.cli.CliException;
 import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.PropertyPage;
+import com.logabit.pipeforce.cli.PropertyPager;
 import com.logabit.pipeforce.cli.config.CliConfig;
+import com.logabit.pipeforce.cli.service.GetHighWaterMarks;
 import com.logabit.pipeforce.cli.service.PublishCliService;
 import com.logabit.pipeforce.common.command.stub.PropertyListParams;
+import com.logabit.pipeforce.common.command.stub.ServerInfoParams;
 import com.logabit.pipeforce.common.net.Request;
+import com.logabit.pipeforce.common.util.FileUtil;
 import com.logabit.pipeforce.common.util.JsonUtil;
+import com.logabit.pipeforce.common.util.ListUtil;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -15,13 +22,26 @@ import org.junit.contrib.java.lang.system.TextFromStandardInputStream;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.logabit.pipeforce.common.net.ClientPipeforceURIResolver.Method.GET;
 import static org.junit.contrib.java.lang.system.TextFromStandardInputStream.emptyStandardInputStream;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -76,15 +96,18 @@ public class GetCliCommandTest extends BaseRepoAwareCliCommandTest {
                 "  }\n" +
                 "]";
 
-        ArrayNode foundPropsNode = (ArrayNode) JsonUtil.jsonStringToJsonNode(foundProperties);
+        PropertyPage foundPropsPage = PropertyPage.read(
+                new ByteArrayInputStream(foundProperties.getBytes(StandardCharsets.UTF_8)));
         when(resolver.command(
                 new PropertyListParams()
                         .pattern("global/app/myapp/pipeline/**")
                         .excludePatterns("global/app/*/data/**")
                         .offset(0)
                         .limit(100),
-                ArrayNode.class
-        )).thenReturn(foundPropsNode);
+                PropertyPage.class
+        )).thenReturn(foundPropsPage);
+
+        Map<File, ByteArrayOutputStream> outputs = mockOutputStreams();
 
         GetCliCommand getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
         getCmd.call(new CommandArgs("global/app/myapp/pipeline/**"));
@@ -92,16 +115,268 @@ public class GetCliCommandTest extends BaseRepoAwareCliCommandTest {
         verify(publishCliService, times(1)).load();
         verify(publishCliService, times(1)).save();
 
-        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
-        ArgumentCaptor<File> fileCaptor = ArgumentCaptor.forClass(File.class);
-        verify(outputService, times(2)).saveByteArrayToFile(dataCaptor.capture(), fileCaptor.capture());
+        Map<File, String> writtenFiles = getWrittenFiles(outputs, 2);
+        Assert.assertEquals("someValue1ččč",
+                writtenFiles.get(new File(repoHome, "properties/global/app/myapp/pipeline/prop1.pi.yaml")));
+        Assert.assertEquals("someValue2",
+                writtenFiles.get(new File(repoHome, "properties/global/app/myapp/pipeline/prop2.pi.yaml")));
+    }
+
+    @Test
+    public void testGetPipelined() throws Exception {
+
+        CliConfig.Instance instance = new CliConfig.Instance();
+        instance.setNamespace("enterprise");
+        cliContext.setCurrentInstance(instance);
+
+        JsonNode serverInfo = JsonUtil.mapToJsonNode(ListUtil.asMap(
+                "versionMajor", 10, "versionMinor", 0, "versionBugfix", 2));
+        when(resolver.command(Mockito.isA(ServerInfoParams.class), any())).thenReturn(serverInfo);
+
+        // Two full pages and a last one with 50 properties
+        when(resolver.command(listParams(0), PropertyPage.class)).thenReturn(createProperties(0, 100));
+        when(resolver.command(listParams(100), PropertyPage.class)).thenReturn(createProperties(100, 100));
+        when(resolver.command(listParams(200), PropertyPage.class)).thenReturn(createProperties(200, 50));
+        Map<File, ByteArrayOutputStream> outputs = mockOutputStreams();
+
+        GetCliCommand getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
+        getCmd.setPrefetch(2);
+        getCmd.setParallel(2);
+        getCmd.setPageSize(PropertyPager.DEFAULT_PAGE_SIZE); // Fixed offsets
+        getCmd.call(new CommandArgs("--writers:8", "global/app/myapp/pipeline/**"));
 
-        List<byte[]> allData = dataCaptor.getAllValues();
-        Assert.assertEquals("someValue1ččč", new String(allData.get(0)));
-        Assert.assertEquals("someValue2", new String(allData.get(1)));
+        Map<File, String> writtenFiles = getWrittenFiles(outputs, 250);
+        Assert.assertEquals("pipeline: 42",
+                writtenFiles.get(new File(repoHome, "properties/global/app/myapp/pipeline/prop42.pi.yaml")));
 
+        // Written in parallel, but added to the registry in order of the pages
+        ArgumentCaptor<File> fileCaptor = ArgumentCaptor.forClass(File.class);
+        verify(publishCliService, times(250)).add(fileCaptor.capture(), anyLong(), anyString());
         List<File> allFiles = fileCaptor.getAllValues();
-        Assert.assertEquals(new File(repoHome, "properties/global/app/myapp/pipeline/prop1.pi.yaml"), allFiles.get(0));
-        Assert.assertEquals(new File(repoHome, "properties/global/app/myapp/pipeline/prop2.pi.yaml"), allFiles.get(1));
+        for (int i = 0; i < 250; i++) {
+            Assert.assertEquals(new File(repoHome, "properties/global/app/myapp/pipeline/prop" + i + ".pi.yaml"),
+                    allFiles.get(i));
+        }
+
+        // After the last page, fetching continues right after the received properties
+        verify(resolver, times(1)).command(listParams(250, 50), PropertyPage.class);
+    }
+
+    @Test
+    public void testGetPipelinedServerCapsLimit() throws Exception {
+
+        CliConfig.Instance instance = new CliConfig.Instance();
+        instance.setNamespace("enterprise");
+        cliContext.setCurrentInstance(instance);
+
+        JsonNode serverInfo = JsonUtil.mapToJsonNode(ListUtil.asMap(
+                "versionMajor", 10, "versionMinor", 0, "versionBugfix", 2));
+        when(resolver.command(Mockito.isA(ServerInfoParams.class), any())).thenReturn(serverInfo);
+
+        // 100 properties, but the server returns at most 30 per page
+        List<String> requests = new ArrayList<>();
+        when(resolver.command(Mockito.isA(PropertyListParams.class), Mockito.eq(PropertyPage.class)))
+                .thenAnswer(invocation -> {
+                    Map<String, Object> params = ((PropertyListParams) invocation.getArgument(0)).getParamsMap();
+                    int offset = (Integer) params.get("offset");
+                    int limit = (Integer) params.get("limit");
+                    requests.add(offset + ":" + limit);
+                    return createProperties(offset, Math.max(0, Math.min(Math.min(limit, 30), 100 - offset)));
+                });
+        Map<File, ByteArrayOutputStream> outputs = mockOutputStreams();
+
+        GetCliCommand getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
+        getCmd.setPrefetch(2);
+        getCmd.setPageSize(PropertyPager.DEFAULT_PAGE_SIZE);
+        getCmd.call(new CommandArgs("global/app/myapp/pipeline/**"));
+
+        getWrittenFiles(outputs, 100);
+
+        // After the first short page, the pages ahead are requested with the size the server returned
+        Assert.assertEquals("0:100", requests.get(0));
+        Assert.assertTrue(requests.contains("30:30"));
+        Assert.assertTrue(requests.contains("60:30"));
+        Assert.assertTrue(requests.contains("90:30"));
+    }
+
+    @Test
+    public void testGetIncremental() throws Exception {
+
+        CliConfig.Instance instance = new CliConfig.Instance();
+        instance.setNamespace("enterprise");
+        cliContext.setCurrentInstance(instance);
+
+        JsonNode serverInfo = JsonUtil.mapToJsonNode(ListUtil.asMap(
+                "versionMajor", 10, "versionMinor", 0, "versionBugfix", 2));
+        when(resolver.command(Mockito.isA(ServerInfoParams.class), any())).thenReturn(serverInfo);
+        mockOutputStreams();
+
+        // First get -> All properties
+        when(resolver.command(listParams(0), PropertyPage.class)).thenReturn(createProperties(0, 10));
+
+        GetCliCommand getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
+        getCmd.call(new CommandArgs("--incremental", "global/app/myapp/pipeline/**"));
+
+        // Second get -> Only the ones changed since the latest timestamp of the first get, minus the overlap
+        PropertyListParams changedParams = listParams(0);
+        changedParams.getParamsMap().put(GetCliCommand.PARAM_UPDATED_SINCE,
+                1613460723183L - GetCliCommand.HIGH_WATER_MARK_OVERLAP_MILLIS);
+        when(resolver.command(changedParams, PropertyPage.class)).thenReturn(createProperties(0, 1));
+
+        getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
+        getCmd.call(new CommandArgs("--incremental", "global/app/myapp/pipeline/**"));
+
+        verify(resolver, times(1)).command(changedParams, PropertyPage.class);
+        verify(outputService, never()).println(GetCliCommand.UPDATED_SINCE_IGNORED_WARNING);
+
+        // Full get -> All properties again
+        when(resolver.command(listParams(0), PropertyPage.class)).thenReturn(createProperties(0, 10));
+
+        getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
+        getCmd.call(new CommandArgs("--incremental", "--full:true", "global/app/myapp/pipeline/**"));
+
+        verify(resolver, times(2)).command(listParams(0), PropertyPage.class);
+
+        // Not incremental -> All properties again
+        when(resolver.command(listParams(0), PropertyPage.class)).thenReturn(createProperties(0, 10));
+
+        getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
+        getCmd.call(new CommandArgs("global/app/myapp/pipeline/**"));
+
+        verify(resolver, times(3)).command(listParams(0), PropertyPage.class);
+        verify(resolver, times(1)).command(changedParams, PropertyPage.class);
+    }
+
+    @Test
+    public void testGetIncrementalIgnored() throws Exception {
+
+        CliConfig.Instance instance = new CliConfig.Instance();
+        instance.setNamespace("enterprise");
+        cliContext.setCurrentInstance(instance);
+
+        JsonNode serverInfo = JsonUtil.mapToJsonNode(ListUtil.asMap(
+                "versionMajor", 10, "versionMinor", 0, "versionBugfix", 2));
+        when(resolver.command(Mockito.isA(ServerInfoParams.class), any())).thenReturn(serverInfo);
+        mockOutputStreams();
+
+        // Last get was after all properties were updated
+        long updatedSince = 1613460723183L + 1000;
+        GetHighWaterMarks highWaterMarks = new GetHighWaterMarks(cliContext.getHiddenPipeforceFolder());
+        highWaterMarks.put(GetHighWaterMarks.toKey(instance.getHost(), "enterprise", "global/app/myapp/pipeline/**",
+                "global/app/*/data/**", cliContext.getPropertiesHomeFolder().getAbsolutePath()), updatedSince);
+        highWaterMarks.save();
+
+        // Server ignores the parameter and sends all properties
+        PropertyListParams changedParams = listParams(0);
+        changedParams.getParamsMap().put(GetCliCommand.PARAM_UPDATED_SINCE, updatedSince);
+        when(resolver.command(changedParams, PropertyPage.class)).thenReturn(createProperties(0, 10));
+
+        GetCliCommand getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
+        getCmd.call(new CommandArgs("--incremental", "global/app/myapp/pipeline/**"));
+
+        verify(resolver, times(1)).command(changedParams, PropertyPage.class);
+        verify(outputService, times(1)).println(GetCliCommand.UPDATED_SINCE_IGNORED_WARNING);
+    }
+
+    @Test
+    public void testGetUnchangedContent() throws Exception {
+
+        CliConfig.Instance instance = new CliConfig.Instance();
+        instance.setNamespace("enterprise");
+        cliContext.setCurrentInstance(instance);
+
+        JsonNode serverInfo = JsonUtil.mapToJsonNode(ListUtil.asMap(
+                "versionMajor", 10, "versionMinor", 0, "versionBugfix", 2));
+        when(resolver.command(Mockito.isA(ServerInfoParams.class), any())).thenReturn(serverInfo);
+        mockOutputStreams();
+
+        // Same content as on the server, but another timestamp, for example after a re-save on the server
+        File localFile = new File(repoHome, "properties/global/app/myapp/pipeline/prop0.pi.yaml");
+        FileUtil.saveStringToFile("pipeline: 0", localFile);
+        localFile.setLastModified(1000);
+
+        when(resolver.command(listParams(0), PropertyPage.class)).thenReturn(createProperties(0, 1));
+
+        GetCliCommand getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
+        getCmd.call(new CommandArgs("global/app/myapp/pipeline/**"));
+
+        // Not asked to overwrite and not written, but the remote timestamp is registered
+        verify(outputService, never()).println("File already exists. Overwrite?");
+        verify(outputService, never()).commitFile(any(File.class), any(File.class), anyLong());
+        verify(publishCliService, times(1)).add(localFile, 1613460723183L,
+                PublishCliService.createDigest(localFile));
+        verify(outputService, times(1)).println("unchanged");
+    }
+
+    @Test(expected = CliException.class)
+    public void testParallelLimit() {
+
+        GetCliCommand getCmd = (GetCliCommand) cliContext.createCommandInstance("get");
+        getCmd.setParallel(GetCliCommand.MAX_PARALLEL + 1);
+    }
+
+    private PropertyListParams listParams(int offset) {
+        return listParams(offset, PropertyPager.DEFAULT_PAGE_SIZE);
+    }
+
+    private PropertyListParams listParams(int offset, int limit) {
+
+        return new PropertyListParams()
+                .pattern("global/app/myapp/pipeline/**")
+                .excludePatterns("global/app/*/data/**")
+                .offset(offset)
+                .limit(limit);
+    }
+
+    /**
+     * Collects the content written into each temp file.
+     */
+    private Map<File, ByteArrayOutputStream> mockOutputStreams() {
+
+        Map<File, ByteArrayOutputStream> outputs = new ConcurrentHashMap<>();
+        when(outputService.createOutputStream(any(File.class))).thenAnswer(invocation -> {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            outputs.put(invocation.getArgument(0), bos);
+            return bos;
+        });
+
+        return outputs;
+    }
+
+    /**
+     * Returns the content of each file committed from a temp file to its target file.
+     */
+    private Map<File, String> getWrittenFiles(Map<File, ByteArrayOutputStream> outputs, int count)
+            throws UnsupportedEncodingException {
+
+        ArgumentCaptor<File> tmpCaptor = ArgumentCaptor.forClass(File.class);
+        ArgumentCaptor<File> targetCaptor = ArgumentCaptor.forClass(File.class);
+        verify(outputService, times(count)).commitFile(tmpCaptor.capture(), targetCaptor.capture(), anyLong());
+
+        Map<File, String> writtenFiles = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            File tmpFile = tmpCaptor.getAllValues().get(i);
+            File targetFile = targetCaptor.getAllValues().get(i);
+            Assert.assertEquals(targetFile.getParentFile(), tmpFile.getParentFile());
+            writtenFiles.put(targetFile, outputs.get(tmpFile).toString("UTF-8"));
+        }
+
+        return writtenFiles;
+    }
+
+    private PropertyPage createProperties(int start, int count) {
+
+        List<Map> properties = new ArrayList<>();
+        for (int i = start; i < start + count; i++) {
+            properties.add(ListUtil.asMap(
+                    "path", "/pipeforce/enterprise/global/app/myapp/pipeline/prop" + i,
+                    "value", "pipeline: " + i,
+                    "type", "application/yaml; type=pipeline",
+                    "created", 1613460723183L,
+                    "updated", 1613460723183L));
+        }
+
+        String json = JsonUtil.objectToJsonString(properties);
+        return PropertyPage.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
     }
 }
@@ -0,0 +1,199 @@
+package com.logabit.pipeforce.cli.command;
+
+import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.service.ImportJournal;
+import com.logabit.pipeforce.common.command.stub.PropertyImportParams;
+import com.logabit.pipeforce.common.util.FileUtil;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.TextFromStandardInputStream;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.contrib.java.lang.system.TextFromStandardInputStream.emptyStandardInputStream;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the {@link ImportCliCommand}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ImportCliCommandTest extends BaseRepoAwareCliCommandTest {
+
+    private static final String DATA_PATH = "properties/global/app/myapp/data/";
+
+    @Rule
+    public final TextFromStandardInputStream systemInMock = emptyStandardInputStream();
+
+    @Test
+    public void testImportConcurrent() throws Exception {
+
+        createDataFiles(20, 10);
+
+        systemInMock.provideLines("yes");
+        ImportCliCommand importCommand = (ImportCliCommand) cliContext.createCommandInstance("import");
+        int result = importCommand.call(new CommandArgs("-batchSize:3", "-concurrency:4", "-readers:2",
+                "-waitBetween:0", DATA_PATH));
+
+        Assert.assertEquals(0, result);
+        verify(resolver, times(7)).command(Mockito.isA(PropertyImportParams.class));
+        Assert.assertEquals(7, importCommand.getBatchCounter());
+        Assert.assertEquals(20, importCommand.getImportedCounter());
+
+        // Finished -> No journal left
+        Assert.assertFalse(new File(cliContext.getHiddenPipeforceFolder(), ImportJournal.JOURNAL_FILE_NAME).exists());
+    }
+
+    @Test
+    public void testImportFailedBatch() throws Exception {
+
+        createDataFiles(40, 10);
+
+        // Second batch fails
+        AtomicInteger calls = new AtomicInteger();
+        Mockito.when(resolver.command(Mockito.isA(PropertyImportParams.class))).thenAnswer(invocation -> {
+
+            if (calls.incrementAndGet() == 2) {
+                throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+
+            return null;
+        });
+
+        systemInMock.provideLines("yes");
+        ImportCliCommand importCommand = (ImportCliCommand) cliContext.createCommandInstance("import");
+        int result = importCommand.call(new CommandArgs("-batchSize:2", "-concurrency:1", "-readers:1",
+                "-waitBetween:0", DATA_PATH));
+
+        Assert.assertEquals(-1, result);
+        verify(outputService, atLeastOnce()).println(startsWith("Import of batch 2 (files 3-4: "));
+
+        // No more batches built than the ones in the pipeline when the failure was collected
+        Assert.assertTrue(importCommand.getBatchCounter() <= 2 + 1 + 2 * 1);
+        Assert.assertTrue(importCommand.getImportedCounter() < 40);
+
+        // Not finished -> Journal is kept for resume
+        Assert.assertTrue(new File(cliContext.getHiddenPipeforceFolder(), ImportJournal.JOURNAL_FILE_NAME).exists());
+    }
+
+    @Test
+    public void testImportBatchBytes() throws Exception {
+
+        createDataFiles(10, 100);
+
+        // 2 files of 100 bytes fit into 250 bytes
+        systemInMock.provideLines("yes");
+        ImportCliCommand importCommand = (ImportCliCommand) cliContext.createCommandInstance("import");
+        importCommand.call(new CommandArgs("-batchSize:50", "-batchBytes:250", "-waitBetween:0", DATA_PATH));
+
+        verify(resolver, times(5)).command(Mockito.isA(PropertyImportParams.class));
+        Assert.assertEquals(10, importCommand.getImportedCounter());
+    }
+
+    @Test
+    public void testImportFileBiggerThanBatchBytes() throws Exception {
+
+        createDataFiles(3, 1000);
+
+        // Each file alone exceeds the limit -> Sent alone
+        systemInMock.provideLines("yes");
+        ImportCliCommand importCommand = (ImportCliCommand) cliContext.createCommandInstance("import");
+        importCommand.call(new CommandArgs("-batchSize:50", "-batchBytes:250", "-waitBetween:0", DATA_PATH));
+
+        verify(resolver, times(3)).command(Mockito.isA(PropertyImportParams.class));
+        Assert.assertEquals(3, importCommand.getImportedCounter());
+    }
+
+    @Test
+    public void testImportInvalidJson() throws Exception {
+
+        File dataFolder = new File(repoHome, DATA_PATH);
+        FileUtil.createFolders(dataFolder);
+        FileUtil.saveStringToFile("{\"name\": \"broken\"", new File(dataFolder, "broken.json"));
+
+        systemInMock.provideLines("yes");
+        ImportCliCommand importCommand = (ImportCliCommand) cliContext.createCommandInstance("import");
+        int result = importCommand.call(new CommandArgs("-waitBetween:0", DATA_PATH));
+
+        // Reported by its name, nothing sent
+        Assert.assertEquals(-1, result);
+        verify(outputService, atLeastOnce()).println(contains("Invalid JSON in file"));
+        verify(outputService, atLeastOnce()).println(contains("broken.json"));
+        verify(resolver, times(0)).command(Mockito.isA(PropertyImportParams.class));
+    }
+
+    @Test
+    public void testImportResumeDoneFolder() throws Exception {
+
+        createDataFiles(4, 10);
+        File dataFolder = new File(repoHome, DATA_PATH);
+        writeDoneFolder(dataFolder);
+
+        // Folder unchanged since it was imported -> Skipped
+        systemInMock.provideLines("yes", "yes");
+        ImportCliCommand importCommand = (ImportCliCommand) cliContext.createCommandInstance("import");
+        importCommand.call(new CommandArgs("--resume", "-waitBetween:0", DATA_PATH));
+
+        verify(resolver, times(0)).command(Mockito.isA(PropertyImportParams.class));
+        Assert.assertEquals(0, importCommand.getImportedCounter());
+
+        // File added since then -> All files of the folder are imported again
+        writeDoneFolder(dataFolder);
+        FileUtil.saveStringToFile("{\"i\":4}", new File(dataFolder, "4.json"));
+
+        importCommand = (ImportCliCommand) cliContext.createCommandInstance("import");
+        importCommand.call(new CommandArgs("--resume", "-waitBetween:0", DATA_PATH));
+
+        Assert.assertEquals(5, importCommand.getImportedCounter());
+    }
+
+    /**
+     * Writes a journal which marks the given folder with its current files as imported.
+     */
+    private void writeDoneFolder(File folder) {
+
+        long bytes = 0;
+        long lastModifiedSum = 0;
+        File[] files = folder.listFiles(File::isFile);
+        for (File file : files) {
+            bytes = bytes + file.length();
+            lastModifiedSum = lastModifiedSum + file.lastModified();
+        }
+
+        ImportJournal journal = new ImportJournal(cliContext.getHiddenPipeforceFolder());
+        journal.addFolder(folder, files.length, bytes, lastModifiedSum);
+        journal.flush();
+    }
+
+    /**
+     * Creates the given number of JSON files, each of the given size in bytes.
+     */
+    private void createDataFiles(int count, int size) {
+
+        File dataFolder = new File(repoHome, DATA_PATH);
+        FileUtil.createFolders(dataFolder);
+
+        for (int i = 0; i < count; i++) {
+
+            StringBuilder json = new StringBuilder("{\"i\":" + i + ",\"v\":\"");
+            while (json.length() < size - 2) {
+                json.append('x');
+            }
+
+            FileUtil.saveStringToFile(json.append("\"}").toString(), new File(dataFolder, i + ".json"));
+        }
+    }
+}
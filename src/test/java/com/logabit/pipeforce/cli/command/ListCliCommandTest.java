@@ -1,12 +1,17 @@
 package com.logabit.pipeforce.cli.command;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.logabit.pipeforce.cli.CliContext;
 import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.PropertyPage;
 import com.logabit.pipeforce.cli.config.CliConfig;
 import com.logabit.pipeforce.cli.service.ConfigCliService;
 import com.logabit.pipeforce.common.command.ICommandParams;
 import com.logabit.pipeforce.common.command.stub.PropertyListParams;
+import com.logabit.pipeforce.common.command.stub.ServerInfoParams;
 import com.logabit.pipeforce.common.model.WorkspaceConfig;
 import com.logabit.pipeforce.common.net.ClientPipeforceURIResolver;
 import com.logabit.pipeforce.common.net.Request;
@@ -14,7 +19,9 @@ import com.logabit.pipeforce.common.util.JsonUtil;
 import com.logabit.pipeforce.common.util.ListUtil;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.contrib.java.lang.system.SystemOutRule;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
@@ -22,6 +29,8 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -41,6 +50,9 @@ public class ListCliCommandTest {
     @InjectMocks
     private final CliContext cliContext = new CliContext();
 
+    @Rule
+    public final SystemOutRule systemOutRule = new SystemOutRule().enableLog();
+
     @Mock
     private ConfigCliService configService;
 
@@ -85,9 +97,10 @@ public class ListCliCommandTest {
                 "  }\n" +
                 "]";
 
-        ArrayNode foundPropsNode = (ArrayNode) JsonUtil.jsonStringToJsonNode(foundProperties);
+        PropertyPage foundPropsPage = PropertyPage.read(
+                new ByteArrayInputStream(foundProperties.getBytes(StandardCharsets.UTF_8)));
 
-        when(resolver.command(any(), any())).thenReturn(foundPropsNode);
+        when(resolver.command(any(), any())).thenReturn(foundPropsPage);
 
         ListCliCommand getCmd = (ListCliCommand) cliContext.createCommandInstance("list");
         getCmd.call(new CommandArgs("global/app/myapp/"));
@@ -124,4 +137,47 @@ public class ListCliCommandTest {
         Assert.assertEquals("global/app/myapp", ListUtil.lastElement(values).getParamsMap().get("pattern"));
 
     }
+
+    @Test
+    public void testListStreaming() throws Exception {
+
+        CliConfig.Instance instance = new CliConfig.Instance();
+        instance.setNamespace("enterprise");
+        cliContext.setCurrentInstance(instance);
+        cliContext.setArgs("list", "-o:ndjson", "global/app/myapp/**");
+
+        JsonNode serverInfo = JsonUtil.mapToJsonNode(ListUtil.asMap(
+                "versionMajor", 10, "versionMinor", 0, "versionBugfix", 2));
+        when(resolver.command(Mockito.isA(ServerInfoParams.class), any())).thenReturn(serverInfo);
+
+        // A full page, a short one and an empty one
+        when(resolver.command(Mockito.isA(PropertyListParams.class), any()))
+                .thenReturn(createProperties(0, 10), createProperties(10, 3), createProperties(13, 0));
+
+        ListCliCommand listCmd = (ListCliCommand) cliContext.createCommandInstance("list");
+        listCmd.setPageSize(10);
+        listCmd.call(cliContext.getArgs());
+
+        verify(resolver, times(3)).command(Mockito.isA(PropertyListParams.class), any());
+
+        // One JSON object per line and property, without any YAML around
+        String[] lines = systemOutRule.getLog().trim().split("\\R");
+        Assert.assertEquals(13, lines.length);
+        Assert.assertEquals("{\"key\":\"/global/app/myapp/pipeline/prop12\"," +
+                "\"type\":\"application/yaml; type=pipeline\",\"uuid\":null,\"created\":1613460723183," +
+                "\"updated\":null}", lines[12]);
+    }
+
+    private PropertyPage createProperties(int start, int count) {
+
+        ArrayNode page = JsonNodeFactory.instance.arrayNode();
+        for (int i = start; i < start + count; i++) {
+            ObjectNode property = page.addObject();
+            property.put("path", "/pipeforce/enterprise/global/app/myapp/pipeline/prop" + i);
+            property.put("type", "application/yaml; type=pipeline");
+            property.put("created", 1613460723183L);
+        }
+
+        return PropertyPage.read(new ByteArrayInputStream(page.toString().getBytes(StandardCharsets.UTF_8)));
+    }
 }
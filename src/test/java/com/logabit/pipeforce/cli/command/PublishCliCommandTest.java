@@ -1,10 +1,17 @@
 package com.logabit.pipeforce.cli.command;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.logabit.pipeforce.cli.CliException;
 import com.logabit.pipeforce.cli.CommandArgs;
+import com.logabit.pipeforce.cli.PropertyPage;
 import com.logabit.pipeforce.cli.config.CliConfig;
+import com.logabit.pipeforce.cli.service.PublishCliService;
+import com.logabit.pipeforce.cli.service.PublishProgress;
 import com.logabit.pipeforce.common.command.ICommandParams;
+import com.logabit.pipeforce.common.command.stub.PropertyImportParams;
+import com.logabit.pipeforce.common.command.stub.PropertyListParams;
 import com.logabit.pipeforce.common.command.stub.PropertySchemaPutParams;
+import com.logabit.pipeforce.common.command.stub.ServerInfoParams;
 import com.logabit.pipeforce.common.net.Request;
 import com.logabit.pipeforce.common.util.FileUtil;
 import com.logabit.pipeforce.common.util.JsonUtil;
@@ -31,6 +38,7 @@ import static com.logabit.pipeforce.common.property.IProperty.FIELD_PATH;
 import static org.junit.contrib.java.lang.system.TextFromStandardInputStream.emptyStandardInputStream;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -148,6 +156,272 @@ public class PublishCliCommandTest extends BaseRepoAwareCliCommandTest {
         Assert.assertEquals(1, publishCommand.getPublishedCounter());
     }
 
+    @Test
+    public void testPublishParallel() throws Exception {
+
+        File[] files = createPipelineFiles(10);
+
+        JsonNode resultNode = JsonUtil.mapToJsonNode(ListUtil.asMap("result", "create"));
+        Mockito.when(resolver.command(any(), any())).thenReturn(resultNode);
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+        publishCommand.setParallel(4);
+        publishCommand.publish(files, false);
+
+        verify(resolver, times(10)).command(any(), any());
+        Assert.assertEquals(10, publishCommand.getFilesCounter());
+        Assert.assertEquals(10, publishCommand.getPublishedCounter());
+        Assert.assertEquals(10, publishCommand.getCreatedCounter());
+        Assert.assertEquals(10, cliContext.getPublishService().getPublishedMap().size());
+    }
+
+    @Test
+    public void testPublishParallelRegistersOnlySucceeded() throws Exception {
+
+        File[] files = createPipelineFiles(10);
+
+        JsonNode resultNode = JsonUtil.mapToJsonNode(ListUtil.asMap("result", "create"));
+        Mockito.when(resolver.command(any(), any())).thenAnswer(invocation -> {
+
+            PropertySchemaPutParams params = invocation.getArgument(0);
+            if ((params.getParamsMap().get(FIELD_PATH) + "").endsWith("pipeline3")) {
+                throw new RuntimeException("Server error");
+            }
+
+            return resultNode;
+        });
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+        publishCommand.setParallel(4);
+
+        try {
+            publishCommand.publish(files, false);
+            Assert.fail("Failed put request must be reported.");
+        } catch (CliException e) {
+            // Expected
+        }
+
+        Assert.assertEquals(9, publishCommand.getPublishedCounter());
+        Map publishedMap = cliContext.getPublishService().getPublishedMap();
+        Assert.assertEquals(9, publishedMap.size());
+        Assert.assertFalse(publishedMap.containsKey(files[3].getAbsolutePath()));
+    }
+
+    @Test
+    public void testPublishBulk() throws Exception {
+
+        File[] files = createPipelineFiles(10);
+        mockServerVersion(10, 0, 2);
+
+        JsonNode importResult = JsonUtil.objectToJsonNode(ListUtil.asList(
+                ListUtil.asMap(FIELD_PATH, "/pipeforce/enterprise/global/app/myapp/pipeline/pipeline0", "result", "create"),
+                ListUtil.asMap(FIELD_PATH, "/pipeforce/enterprise/global/app/myapp/pipeline/pipeline1", "result", "update")
+        ));
+
+        Mockito.when(resolver.command(Mockito.isA(PropertyImportParams.class), any())).thenReturn(importResult);
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+        publishCommand.setBulk(true);
+        publishCommand.publish(files, false);
+
+        // All 10 files fit into a single batch
+        verify(resolver, times(1)).command(Mockito.isA(PropertyImportParams.class), any());
+        verify(resolver, times(0)).command(Mockito.isA(PropertySchemaPutParams.class), any());
+        Assert.assertEquals(10, publishCommand.getPublishedCounter());
+        Assert.assertEquals(1, publishCommand.getCreatedCounter());
+        Assert.assertEquals(9, publishCommand.getUpdatedCounter());
+        Assert.assertEquals(10, cliContext.getPublishService().getPublishedMap().size());
+    }
+
+    @Test
+    public void testPublishBulkFallbackOnOldServer() throws Exception {
+
+        File[] files = createPipelineFiles(3);
+        mockServerVersion(9, 0, 0);
+
+        JsonNode resultNode = JsonUtil.mapToJsonNode(ListUtil.asMap("result", "create"));
+        Mockito.when(resolver.command(Mockito.isA(PropertySchemaPutParams.class), any())).thenReturn(resultNode);
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+        publishCommand.setBulk(true);
+        publishCommand.publish(files, false);
+
+        verify(resolver, times(3)).command(Mockito.isA(PropertySchemaPutParams.class), any());
+        verify(resolver, times(0)).command(Mockito.isA(PropertyImportParams.class), any());
+        Assert.assertEquals(3, publishCommand.getCreatedCounter());
+    }
+
+    @Test
+    public void testPublishRemotePlan() throws Exception {
+
+        File[] files = createPipelineFiles(3);
+        mockServerVersion(10, 0, 2);
+
+        // pipeline0 has same checksum on server, pipeline1 has no checksum and was never downloaded,
+        // pipeline2 doesn't exist on server
+        JsonNode remoteList = JsonUtil.objectToJsonNode(ListUtil.asList(
+                ListUtil.asMap(FIELD_PATH, "/pipeforce/enterprise/global/app/myapp/pipeline/pipeline0",
+                        "type", "application/yaml", "checksum", PublishCliService.createDigest(files[0])),
+                ListUtil.asMap(FIELD_PATH, "/pipeforce/enterprise/global/app/myapp/pipeline/pipeline1",
+                        "type", "application/yaml", "updated", files[1].lastModified() - 1000)
+        ));
+
+        Mockito.when(resolver.command(Mockito.isA(PropertyListParams.class), any()))
+                .thenReturn(remoteList, JsonUtil.objectToJsonNode(ListUtil.asList()));
+
+        JsonNode resultNode = JsonUtil.mapToJsonNode(ListUtil.asMap("result", "update"));
+        Mockito.when(resolver.command(Mockito.isA(PropertySchemaPutParams.class), any())).thenReturn(resultNode);
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+        publishCommand.setRemoteCheck(true);
+        publishCommand.publish(cliContext.createPathArg("properties/global/app/myapp/**"), false);
+
+        // Only the metadata of the parent folder is requested
+        verify(resolver, times(2)).command(Mockito.isA(PropertyListParams.class), any());
+        ArgumentCaptor<ICommandParams> paramsCaptor = ArgumentCaptor.forClass(ICommandParams.class);
+        verify(resolver, atLeastOnce()).command(paramsCaptor.capture(), any());
+        Map<String, Object> listParams = paramsCaptor.getAllValues().stream()
+                .filter(params -> params instanceof PropertyListParams)
+                .findFirst().get().getParamsMap();
+        Assert.assertEquals("global/app/myapp/pipeline/*", listParams.get("pattern"));
+        Assert.assertEquals(PublishCliCommand.PLAN_FIELDS, listParams.get(PropertyPage.PARAM_FIELDS));
+
+        verify(resolver, times(2)).command(Mockito.isA(PropertySchemaPutParams.class), any());
+        Assert.assertEquals(2, publishCommand.getPublishedCounter());
+        Assert.assertEquals(1, publishCommand.getUnchangedCounter());
+
+        // The unchanged file is registered too, so it is skipped locally next time
+        Assert.assertEquals(3, cliContext.getPublishService().getPublishedMap().size());
+    }
+
+    @Test
+    public void testPublishRemotePlanNoChecksum() throws Exception {
+
+        File[] files = createPipelineFiles(1);
+        mockServerVersion(10, 0, 2);
+
+        // No checksum and the server was updated after the local file was modified -> Content could still differ
+        JsonNode remoteList = JsonUtil.objectToJsonNode(ListUtil.asList(
+                ListUtil.asMap(FIELD_PATH, "global/app/myapp/pipeline/pipeline0",
+                        "type", "application/yaml", "updated", files[0].lastModified() + 1000)
+        ));
+
+        Mockito.when(resolver.command(Mockito.isA(PropertyListParams.class), any()))
+                .thenReturn(remoteList, JsonUtil.objectToJsonNode(ListUtil.asList()));
+
+        JsonNode resultNode = JsonUtil.mapToJsonNode(ListUtil.asMap("result", "update"));
+        Mockito.when(resolver.command(Mockito.isA(PropertySchemaPutParams.class), any())).thenReturn(resultNode);
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+        publishCommand.setRemoteCheck(true);
+        publishCommand.publish(cliContext.createPathArg("properties/global/app/myapp/**"), false);
+
+        verify(resolver, times(1)).command(Mockito.isA(PropertySchemaPutParams.class), any());
+        Assert.assertEquals(1, publishCommand.getPublishedCounter());
+        Assert.assertEquals(0, publishCommand.getUnchangedCounter());
+    }
+
+    @Test
+    public void testPublishDryRun() throws Exception {
+
+        createPipelineFiles(3);
+        mockServerVersion(10, 0, 2);
+
+        Mockito.when(resolver.command(Mockito.isA(PropertyListParams.class), any()))
+                .thenReturn(JsonUtil.objectToJsonNode(ListUtil.asList()));
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+        publishCommand.setRemoteCheck(true);
+        publishCommand.setDryRun(true);
+        publishCommand.publish(cliContext.createPathArg("properties/global/app/myapp/**"), false);
+
+        verify(resolver, times(0)).command(Mockito.isA(PropertySchemaPutParams.class), any());
+        Assert.assertEquals(3, publishCommand.getFilesCounter());
+        Assert.assertEquals(0, publishCommand.getPublishedCounter());
+        Assert.assertEquals(0, cliContext.getPublishService().getPublishedMap().size());
+    }
+
+    @Test
+    public void testPublishDryRunAppConfig() throws Exception {
+
+        File appConfig = new File(repoHome, "properties/global/app/myapp/config/app.json");
+        FileUtil.createFolders(appConfig.getParentFile());
+        String appConfigString = "{\"title\":\"My App\",\"show\":\"case\"}";
+        FileUtil.saveStringToFile(appConfigString, appConfig);
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+        publishCommand.setDryRun(true);
+        publishCommand.publish(cliContext.createPathArg("properties/global/app/myapp/**"), false);
+
+        // Change of show is only reported
+        Assert.assertEquals(appConfigString, FileUtil.fileToString(appConfig));
+        verify(outputService, atLeastOnce()).println(Mockito.contains("Would change show of"));
+    }
+
+    @Test
+    public void testPublishResume() throws Exception {
+
+        File[] files = createPipelineFiles(3);
+
+        JsonNode resultNode = JsonUtil.mapToJsonNode(ListUtil.asMap("result", "create"));
+        Mockito.when(resolver.command(Mockito.isA(PropertySchemaPutParams.class), any()))
+                .thenReturn(resultNode)
+                .thenThrow(new RuntimeException("Connection reset"))
+                .thenReturn(resultNode);
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+
+        try {
+            publishCommand.publish(files, true);
+            Assert.fail("Exception expected");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("Connection reset", e.getMessage());
+        }
+
+        // The first file was saved before the error
+        File progressFile = new File(cliContext.getHiddenPipeforceFolder(), PublishProgress.PROGRESS_FILE_NAME);
+        Assert.assertTrue(progressFile.exists());
+        cliContext.getPublishService().load();
+        Assert.assertEquals(1, cliContext.getPublishService().getPublishedMap().size());
+
+        // Forced publish again, but resumed -> First file must not be published again
+        publishCommand.setResume(true);
+        publishCommand.publish(files, true);
+
+        verify(resolver, times(4)).command(Mockito.isA(PropertySchemaPutParams.class), any());
+        Assert.assertEquals(2, publishCommand.getPublishedCounter());
+        Assert.assertEquals(3, cliContext.getPublishService().getPublishedMap().size());
+        Assert.assertFalse(progressFile.exists());
+    }
+
+    private void mockServerVersion(int major, int minor, int bugfix) {
+
+        JsonNode serverInfo = JsonUtil.mapToJsonNode(ListUtil.asMap(
+                "versionMajor", major, "versionMinor", minor, "versionBugfix", bugfix));
+        Mockito.when(resolver.command(Mockito.isA(ServerInfoParams.class), any())).thenReturn(serverInfo);
+    }
+
+    @Test(expected = CliException.class)
+    public void testParallelLimit() {
+
+        PublishCliCommand publishCommand = (PublishCliCommand) cliContext.createCommandInstance("publish");
+        publishCommand.setParallel(PublishCliCommand.MAX_PARALLEL + 1);
+    }
+
+    private File[] createPipelineFiles(int count) {
+
+        File pipelineFolder = new File(repoHome, "properties/global/app/myapp/pipeline");
+        FileUtil.createFolders(pipelineFolder);
+
+        File[] files = new File[count];
+        for (int i = 0; i < count; i++) {
+            files[i] = new File(pipelineFolder, "pipeline" + i + ".pi.yaml");
+            FileUtil.saveStringToFile("pipeline:\n  - log:\n      message: " + i, files[i]);
+        }
+
+        return files;
+    }
+
     @Test
     public void testPreparePath() throws Exception {
 
@@ -0,0 +1,68 @@
+package com.logabit.pipeforce.cli.service;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the {@link AppendOnlyFile}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class AppendOnlyFileTest {
+
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadLines() throws Exception {
+
+        File file = new File(tmpFolder.getRoot(), "test.journal");
+        AppendOnlyFile.append(file, "first\n", true);
+        AppendOnlyFile.append(file, "zweite ččč\n", false);
+
+        List<String> lines = new ArrayList<>();
+        long offset = AppendOnlyFile.readLines(file, 0, lines::add);
+
+        Assert.assertEquals(2, lines.size());
+        Assert.assertEquals("zweite ččč", lines.get(1));
+        Assert.assertEquals(file.length(), offset);
+
+        // Continue after the lines read so far
+        AppendOnlyFile.append(file, "third\n", false);
+        lines.clear();
+        Assert.assertEquals(file.length(), AppendOnlyFile.readLines(file, offset, lines::add));
+        Assert.assertEquals(1, lines.size());
+        Assert.assertEquals("third", lines.get(0));
+    }
+
+    @Test
+    public void testIncompleteLine() throws Exception {
+
+        File file = new File(tmpFolder.getRoot(), "test.journal");
+        AppendOnlyFile.append(file, "first\n", false);
+        long length = file.length();
+
+        // Crash while writing the next line
+        AppendOnlyFile.append(file, "sec", false);
+
+        List<String> lines = new ArrayList<>();
+        Assert.assertEquals(length, AppendOnlyFile.readLines(file, 0, lines::add));
+
+        // Incomplete line is skipped and cut off
+        Assert.assertEquals(1, lines.size());
+        Assert.assertEquals(length, file.length());
+
+        // Next line starts on a new line
+        AppendOnlyFile.append(file, "second\n", false);
+        Assert.assertEquals("first\nsecond\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,114 @@
+package com.logabit.pipeforce.cli.service;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Tests the {@link AsyncFileWriter}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class AsyncFileWriterTest {
+
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testWrite() throws Exception {
+
+        File folder = tmpFolder.newFolder("properties");
+
+        List<CompletableFuture<AsyncFileWriter.Result>> writes = new ArrayList<>();
+        try (AsyncFileWriter writer = new AsyncFileWriter(new OutputCliService(), 4, 2)) {
+
+            for (int i = 0; i < 20; i++) {
+                String content = "value" + i;
+                writes.add(writer.write(new File(folder, "sub/prop" + i + ".pi.yaml"), 1613460723000L,
+                        os -> os.write(content.getBytes(StandardCharsets.UTF_8))));
+            }
+        }
+
+        for (int i = 0; i < 20; i++) {
+
+            Assert.assertTrue(writes.get(i).join().isWritten());
+
+            File file = new File(folder, "sub/prop" + i + ".pi.yaml");
+            Assert.assertEquals(PublishCliService.createDigest(file), writes.get(i).join().getDigest());
+            Assert.assertEquals("value" + i, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            Assert.assertEquals(1613460723000L, file.lastModified());
+        }
+
+        // No temp files left
+        Assert.assertEquals(20, new File(folder, "sub").list().length);
+    }
+
+    @Test
+    public void testWriteFailedKeepsTarget() throws Exception {
+
+        File file = tmpFolder.newFile("prop.pi.yaml");
+        Files.write(file.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+
+        CompletableFuture<AsyncFileWriter.Result> write;
+        try (AsyncFileWriter writer = new AsyncFileWriter(new OutputCliService(), 1, 1)) {
+            write = writer.write(file, 1613460723000L, os -> {
+                os.write("partial".getBytes(StandardCharsets.UTF_8));
+                throw new IOException("Connection reset");
+            });
+        }
+
+        try {
+            write.join();
+            Assert.fail("Write must fail");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause().getMessage().contains("Connection reset"));
+        }
+
+        Assert.assertEquals("old", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        Assert.assertEquals(1, file.getParentFile().list().length);
+    }
+
+    @Test
+    public void testWriteUnchanged() throws Exception {
+
+        File same = tmpFolder.newFile("same.pi.yaml");
+        Files.write(same.toPath(), "value".getBytes(StandardCharsets.UTF_8));
+        same.setLastModified(1000L);
+
+        File sameSize = tmpFolder.newFile("sameSize.pi.yaml");
+        Files.write(sameSize.toPath(), "VALUE".getBytes(StandardCharsets.UTF_8));
+        sameSize.setLastModified(1000L);
+
+        CompletableFuture<AsyncFileWriter.Result> sameWrite;
+        CompletableFuture<AsyncFileWriter.Result> sameSizeWrite;
+        try (AsyncFileWriter writer = new AsyncFileWriter(new OutputCliService(), 2, 2)) {
+            sameWrite = writer.write(same, 1613460723000L, os -> os.write("value".getBytes(StandardCharsets.UTF_8)));
+            sameSizeWrite = writer.write(sameSize, 1613460723000L,
+                    os -> os.write("value".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        // Same content -> Untouched
+        Assert.assertFalse(sameWrite.join().isWritten());
+        Assert.assertEquals(PublishCliService.createDigest(same), sameWrite.join().getDigest());
+        Assert.assertEquals(1000L, same.lastModified());
+
+        // Same size but other content -> Written
+        Assert.assertTrue(sameSizeWrite.join().isWritten());
+        Assert.assertEquals("value", new String(Files.readAllBytes(sameSize.toPath()), StandardCharsets.UTF_8));
+        Assert.assertEquals(1613460723000L, sameSize.lastModified());
+
+        // No temp files left
+        Assert.assertEquals(2, tmpFolder.getRoot().list().length);
+    }
+}
@@ -0,0 +1,55 @@
+package com.logabit.pipeforce.cli.service;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Tests the {@link GetHighWaterMarks}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class GetHighWaterMarksTest {
+
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+
+        File pipeforceFolder = tmpFolder.newFolder(".pipeforce");
+        String key = GetHighWaterMarks.toKey("localhost", "enterprise", "global/app/myapp/**", null, "/src");
+        Assert.assertEquals("localhost|enterprise|global/app/myapp/**|null|/src", key);
+
+        GetHighWaterMarks marks = new GetHighWaterMarks(pipeforceFolder);
+        Assert.assertEquals(0, marks.get(key));
+
+        marks.put(key, 1613460723183L);
+        marks.save();
+
+        marks = new GetHighWaterMarks(pipeforceFolder);
+        Assert.assertEquals(1613460723183L, marks.get(key));
+        Assert.assertEquals(0, marks.get(GetHighWaterMarks.toKey("localhost", "enterprise", "global/app/other/**")));
+
+        marks.remove(key);
+        marks.save();
+        Assert.assertEquals(0, new GetHighWaterMarks(pipeforceFolder).get(key));
+    }
+
+    @Test
+    public void testBrokenFile() throws Exception {
+
+        File pipeforceFolder = tmpFolder.newFolder(".pipeforce");
+        Files.write(new File(pipeforceFolder, GetHighWaterMarks.FILE_NAME).toPath(),
+                "{\"foo\": 12".getBytes(StandardCharsets.UTF_8));
+
+        // Broken file -> Full get
+        Assert.assertEquals(0, new GetHighWaterMarks(pipeforceFolder).get("foo"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.logabit.pipeforce.cli.service;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * Tests the {@link ImportJournal}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class ImportJournalTest {
+
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testResume() throws Exception {
+
+        File pipeforceFolder = tmpFolder.newFolder(".pipeforce");
+        File dataFolder = tmpFolder.newFolder("properties", "global", "app", "myapp", "data");
+        File formFolder = tmpFolder.newFolder("properties", "global", "app", "myapp", "form");
+
+        ImportJournal journal = new ImportJournal(pipeforceFolder);
+        Assert.assertFalse(journal.exists());
+
+        journal.add(new File(dataFolder, "1.json"), 10, 1000L);
+        journal.add(new File(dataFolder, "2.json"), 20, 2000L);
+        journal.add(new File(formFolder, "foo.json"), 30, 3000L);
+        journal.addFolder(formFolder, 1, 30, 3000L);
+        journal.flush();
+
+        Assert.assertTrue(journal.exists());
+
+        journal = new ImportJournal(pipeforceFolder);
+        journal.load();
+
+        Assert.assertTrue(journal.isDone(new File(dataFolder, "1.json"), 10, 1000L));
+        Assert.assertTrue(journal.isDone(new File(dataFolder, "2.json"), 20, 2000L));
+
+        // Changed or unknown -> Not done
+        Assert.assertFalse(journal.isDone(new File(dataFolder, "1.json"), 11, 1000L));
+        Assert.assertFalse(journal.isDone(new File(dataFolder, "2.json"), 20, 2001L));
+        Assert.assertFalse(journal.isDone(new File(dataFolder, "3.json"), 10, 1000L));
+
+        // Folder done -> Files are not kept
+        Assert.assertTrue(journal.hasFolder(formFolder));
+        Assert.assertTrue(journal.isFolderDone(formFolder, 1, 30, 3000L));
+        Assert.assertFalse(journal.hasFolder(dataFolder));
+        Assert.assertFalse(journal.isDone(new File(formFolder, "foo.json"), 30, 3000L));
+
+        // File added or changed since then -> Not done
+        Assert.assertFalse(journal.isFolderDone(formFolder, 2, 40, 7000L));
+        Assert.assertFalse(journal.isFolderDone(formFolder, 1, 30, 3001L));
+
+        journal.delete();
+        Assert.assertFalse(journal.exists());
+        Assert.assertFalse(journal.hasFolder(formFolder));
+    }
+}
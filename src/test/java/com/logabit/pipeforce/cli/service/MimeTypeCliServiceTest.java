@@ -0,0 +1,27 @@
+package com.logabit.pipeforce.cli.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MimeTypeCliService}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class MimeTypeCliServiceTest {
+
+    @Test
+    public void testGetExtension() {
+
+        Assert.assertEquals(".json", MimeTypeCliService.getExtension("person.json"));
+        Assert.assertEquals(".pi.yaml", MimeTypeCliService.getExtension("mypipeline.pi.yaml"));
+        Assert.assertEquals(".png", MimeTypeCliService.getExtension("Logo.PNG"));
+
+        // Detected by name -> Not cached by extension
+        Assert.assertNull(MimeTypeCliService.getExtension("Makefile"));
+        Assert.assertNull(MimeTypeCliService.getExtension(".htaccess"));
+        Assert.assertNull(MimeTypeCliService.getExtension("i_study.txt"));
+        Assert.assertNull(MimeTypeCliService.getExtension(null));
+    }
+}
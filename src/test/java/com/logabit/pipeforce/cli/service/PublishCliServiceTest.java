@@ -1,7 +1,17 @@
 package com.logabit.pipeforce.cli.service;
 
+import com.logabit.pipeforce.cli.CliContext;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
 
 /**
  * Tests the {@link PublishCliService}.
@@ -11,6 +21,9 @@ import org.junit.Test;
  */
 public class PublishCliServiceTest {
 
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
     @Test
     public void testAddAndRemove() {
 
@@ -29,4 +42,155 @@ public class PublishCliServiceTest {
         Assert.assertFalse(service.getPublishedMap().containsKey("/Users/max/pipeforce/src/app/anotherApp/pipeline/bar1.pi.yaml"));
         Assert.assertFalse(service.getPublishedMap().containsKey("/Users/max/pipeforce/src/app/anotherApp/pipeline/bar2.pi.yaml"));
     }
+
+    @Test
+    public void testChangeDetection() throws Exception {
+
+        File file = tmpFolder.newFile("pipeline.pi.yaml");
+        Files.write(file.toPath(), "pipeline: foo".getBytes(StandardCharsets.UTF_8));
+
+        PublishCliService service = new PublishCliService();
+        Assert.assertFalse(service.isPublished(file));
+
+        service.add(file);
+        Assert.assertTrue(service.isPublished(file));
+
+        // Touched only (for example by a git checkout) -> Same content -> Unchanged
+        long touched = file.lastModified() + 5000;
+        file.setLastModified(touched);
+        Assert.assertTrue(service.isPublished(file));
+        Map entry = (Map) service.getPublishedMap().get(file.getAbsolutePath());
+        Assert.assertEquals(touched, Long.parseLong(entry.get(PublishCliService.FIELD_LAST_MODIFIED) + ""));
+
+        // Same size but different content within the same second -> Changed
+        Files.write(file.toPath(), "pipeline: bar".getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(touched + 1);
+        Assert.assertFalse(service.isPublished(file));
+
+        // Different size -> Changed
+        Files.write(file.toPath(), "pipeline: foobar".getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(service.isPublished(file));
+    }
+
+    @Test
+    public void testDownloaded() throws Exception {
+
+        File file = tmpFolder.newFile("pipeline.pi.yaml");
+        Files.write(file.toPath(), "pipeline: foo".getBytes(StandardCharsets.UTF_8));
+
+        PublishCliService service = new PublishCliService();
+        service.add(file);
+        Assert.assertFalse(service.isDownloaded(file, 1613460723183L));
+
+        // Content was already up to date -> File keeps its own last modified
+        service.add(file, 1613460723183L);
+        Assert.assertTrue(service.isDownloaded(file, 1613460723183L));
+        Assert.assertFalse(service.isDownloaded(file, 1613460723184L));
+
+        // Changed locally -> Not up to date anymore
+        Files.write(file.toPath(), "pipeline: foobar".getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(service.isDownloaded(file, 1613460723183L));
+    }
+
+    @Test
+    public void testRemoveAll() throws Exception {
+
+        File workDir = tmpFolder.newFolder("repo");
+        new File(workDir, ".pipeforce").mkdirs();
+
+        PublishCliService service = createService(workDir);
+        service.load();
+        service.add("/app/foo.pi.yaml", 1L);
+        service.add("/app/bar.pi.yaml", 2L);
+        service.add("/app/baz.pi.yaml", 3L);
+        service.save();
+
+        service.removeAll(Arrays.asList("/app/foo.pi.yaml", "/app/bar.pi.yaml", "/app/unknown.pi.yaml"));
+        service.save();
+
+        File journalFile = new File(workDir, ".pipeforce/" + PublishCliService.JOURNAL_FILE_NAME);
+        Assert.assertEquals(4, Files.readAllLines(journalFile.toPath()).size());
+
+        PublishCliService otherService = createService(workDir);
+        otherService.load();
+        Assert.assertEquals(1, otherService.getPublishedMap().size());
+        Assert.assertTrue(otherService.isPublished("/app/baz.pi.yaml", 3L));
+    }
+
+    @Test
+    public void testLegacyEntry() throws Exception {
+
+        File file = tmpFolder.newFile("legacy.pi.yaml");
+
+        PublishCliService service = new PublishCliService();
+        service.add(file.getAbsolutePath(), file.lastModified());
+        Assert.assertTrue(service.isPublished(file));
+        Assert.assertFalse(service.add(file.getAbsolutePath(), file.lastModified()));
+    }
+
+    @Test
+    public void testJournal() throws Exception {
+
+        File workDir = tmpFolder.newFolder("repo");
+        File pipeforceFolder = new File(workDir, ".pipeforce");
+        pipeforceFolder.mkdirs();
+
+        // Snapshot of an older version -> Must still be loaded
+        Files.write(new File(pipeforceFolder, PublishCliService.SNAPSHOT_FILE_NAME).toPath(),
+                "{\"/app/old.pi.yaml\": 1000}".getBytes(StandardCharsets.UTF_8));
+
+        PublishCliService service = createService(workDir);
+        service.load();
+        Assert.assertTrue(service.isPublished("/app/old.pi.yaml", 1000000));
+
+        service.add("/app/foo.pi.yaml", 1L);
+        service.add("/app/bar.pi.yaml", 2L);
+        service.remove("/app/old.pi.yaml");
+        service.save();
+
+        File journalFile = new File(pipeforceFolder, PublishCliService.JOURNAL_FILE_NAME);
+        Assert.assertEquals(3, Files.readAllLines(journalFile.toPath()).size());
+
+        // Another process appends a change -> Only this one is read on reload
+        PublishCliService otherService = createService(workDir);
+        otherService.load();
+        Assert.assertEquals(2, otherService.getPublishedMap().size());
+        otherService.removeFolder("/app/b");
+        otherService.save();
+
+        service.load();
+        Assert.assertEquals(1, service.getPublishedMap().size());
+        Assert.assertTrue(service.isPublished("/app/foo.pi.yaml", 1L));
+
+        // Incomplete last record, for example after a crash -> Ignored and cut off
+        Files.write(journalFile.toPath(), "{\"op\":\"put\",\"pa".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        PublishCliService crashedService = createService(workDir);
+        crashedService.load();
+        Assert.assertEquals(1, crashedService.getPublishedMap().size());
+        Assert.assertEquals(4, Files.readAllLines(journalFile.toPath()).size());
+        crashedService.add("/app/baz.pi.yaml", 3L);
+        crashedService.save();
+        Assert.assertEquals(5, Files.readAllLines(journalFile.toPath()).size());
+
+        // Compact -> Journal is merged into the snapshot
+        crashedService.compact();
+        Assert.assertFalse(journalFile.exists());
+
+        PublishCliService compactedService = createService(workDir);
+        compactedService.load();
+        Assert.assertEquals(2, compactedService.getPublishedMap().size());
+        Assert.assertTrue(compactedService.isPublished("/app/foo.pi.yaml", 1L));
+        Assert.assertTrue(compactedService.isPublished("/app/baz.pi.yaml", 3L));
+    }
+
+    private PublishCliService createService(File workDir) {
+
+        CliContext context = new CliContext();
+        context.setCurrentWorkDir(workDir);
+
+        PublishCliService service = new PublishCliService();
+        service.setContext(context);
+        return service;
+    }
 }
@@ -0,0 +1,62 @@
+package com.logabit.pipeforce.cli.service;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the {@link PublishStats}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class PublishStatsTest {
+
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testRequestLatencyPercentiles() {
+
+        PublishStats stats = new PublishStats();
+        Assert.assertEquals(0, stats.getRequestLatencyPercentile(95), 0);
+
+        // Latencies 1 ms ... 100 ms
+        for (int i = 1; i <= 100; i++) {
+            stats.addRequest(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(i), 10);
+        }
+
+        Assert.assertEquals(100, stats.getRequestCount());
+        Assert.assertEquals(1000, stats.getBytesSent());
+        Assert.assertEquals(50, stats.getRequestLatencyPercentile(50), 1);
+        Assert.assertEquals(95, stats.getRequestLatencyPercentile(95), 1);
+        Assert.assertEquals(99, stats.getRequestLatencyPercentile(99), 1);
+        Assert.assertEquals(100, stats.getRequestLatencyPercentile(100), 1);
+    }
+
+    @Test
+    public void testReport() {
+
+        PublishStats stats = new PublishStats();
+        stats.addPhase(PublishStats.PHASE_SCAN, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(20));
+        stats.addPhase(PublishStats.PHASE_PUBLISH, System.nanoTime() - TimeUnit.SECONDS.toNanos(2));
+        stats.addRequest(System.nanoTime(), 100);
+        stats.setCounters(10, 8, 2);
+
+        Assert.assertEquals(4, stats.getFilesPerSecond(), 0.1);
+
+        Map<String, Object> map = stats.toMap();
+        Assert.assertEquals(8, map.get("published"));
+        Assert.assertEquals(2, map.get("failed"));
+        Assert.assertEquals(100L, map.get("bytesSent"));
+        Assert.assertTrue(((Map) map.get("phases")).containsKey(PublishStats.PHASE_SCAN));
+
+        File reportFile = stats.save(tmpFolder.getRoot());
+        Assert.assertTrue(reportFile.exists());
+    }
+}
@@ -0,0 +1,123 @@
+package com.logabit.pipeforce.cli.service;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the {@link RemoteIndex}.
+ *
+ * @author sniederm
+ * @since 11.0
+ */
+public class RemoteIndexTest {
+
+    @Rule
+    public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+
+        File pipeforceFolder = tmpFolder.newFolder(".pipeforce");
+
+        RemoteIndex index = new RemoteIndex(pipeforceFolder, "localhost:8080", "enterprise");
+        Assert.assertFalse(index.exists());
+        Assert.assertEquals(0, index.getHighWaterMark());
+
+        index.put("global/app/myapp/pipeline/foo", "application/yaml; type=pipeline", 1000L);
+        index.put("global/app/myapp/form/bar", "application/json; type=form", 3000L);
+        index.setRefreshed(5000L, true);
+        index.save();
+
+        Assert.assertTrue(index.exists());
+        Assert.assertEquals("localhost_8080_enterprise", index.getFile().getName());
+
+        index = new RemoteIndex(pipeforceFolder, "localhost:8080", "enterprise");
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals(3000L, index.getHighWaterMark());
+        Assert.assertEquals(5000L, index.getRefreshed());
+        Assert.assertEquals(5000L, index.getFullRefreshed());
+
+        RemoteIndex.Entry entry = index.match("global/app/myapp/pipeline/foo").get(0);
+        Assert.assertEquals("application/yaml; type=pipeline", entry.getType());
+        Assert.assertEquals(1000L, entry.getUpdated());
+
+        // Other namespace -> Other index
+        Assert.assertFalse(new RemoteIndex(pipeforceFolder, "localhost:8080", "other").exists());
+    }
+
+    @Test
+    public void testMatchAndRemove() throws Exception {
+
+        RemoteIndex index = createIndex();
+
+        Assert.assertEquals(4, index.match("global/app/myapp/**").size());
+        Assert.assertEquals(3, index.match("global/app/*/pipeline/*").size());
+        Assert.assertEquals(1, index.match("global/app/myapp/data/**").size());
+        Assert.assertEquals(0, index.match("global/app/unknown/**").size());
+
+        index.remove("global/app/myapp/pipeline/**");
+        Assert.assertEquals(2, index.match("global/app/myapp/**").size());
+        Assert.assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+
+        RemoteIndex index = createIndex();
+        long highWaterMark = index.getHighWaterMark();
+
+        // Changed outside of a refresh -> Added, but the high-water mark stays
+        index.update("global/app/myapp/pipeline/new", "application/yaml; type=pipeline", highWaterMark + 1000);
+        Assert.assertEquals(1, index.match("global/app/myapp/pipeline/new").size());
+        Assert.assertEquals(highWaterMark, index.getHighWaterMark());
+    }
+
+    @Test
+    public void testComplete() throws Exception {
+
+        RemoteIndex index = createIndex();
+
+        Assert.assertEquals(Arrays.asList("global/"), index.complete(""));
+        Assert.assertEquals(Arrays.asList("global/app/myapp/", "global/app/myapp2/"), index.complete("global/app/my"));
+
+        List<String> completions = index.complete("global/app/myapp/");
+        Assert.assertEquals(Arrays.asList("global/app/myapp/data/", "global/app/myapp/form/",
+                "global/app/myapp/pipeline/"), completions);
+
+        Assert.assertEquals(Arrays.asList("global/app/myapp/pipeline/bar", "global/app/myapp/pipeline/foo"),
+                index.complete("global/app/myapp/pipeline/"));
+        Assert.assertEquals(0, index.complete("global/app/x").size());
+    }
+
+    @Test
+    public void testBrokenFile() throws Exception {
+
+        File pipeforceFolder = tmpFolder.newFolder(".pipeforce");
+        RemoteIndex index = new RemoteIndex(pipeforceFolder, "localhost", "enterprise");
+        index.getFile().getParentFile().mkdirs();
+        Files.write(index.getFile().toPath(), "broken".getBytes(StandardCharsets.UTF_8));
+
+        // A broken index is empty and requires a full refresh
+        Assert.assertEquals(0, index.size());
+        Assert.assertEquals(0, index.getFullRefreshed());
+    }
+
+    private RemoteIndex createIndex() throws Exception {
+
+        RemoteIndex index = new RemoteIndex(tmpFolder.newFolder(".pipeforce"), "localhost", "enterprise");
+        index.put("global/app/myapp/pipeline/foo", "application/yaml; type=pipeline", 1000L);
+        index.put("global/app/myapp/pipeline/bar", "application/yaml; type=pipeline", 1000L);
+        index.put("global/app/myapp/form/bar", "application/json; type=form", 1000L);
+        index.put("global/app/myapp/data/entry/1", "application/json", 1000L);
+        index.put("global/app/myapp2/pipeline/baz", "application/yaml; type=pipeline", 1000L);
+        return index;
+    }
+}